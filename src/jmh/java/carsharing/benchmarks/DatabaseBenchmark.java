@@ -0,0 +1,155 @@
+package carsharing.benchmarks;
+
+import carsharing.impementation.CachingDatabase;
+import carsharing.impementation.DatabaseConfig;
+import carsharing.interfaces.DatabaseInterface;
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.Customer;
+import carsharing.valueobjects.Page;
+import carsharing.valueobjects.PageCursor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DatabaseInterface operations the menus and the network service run,
+ * against the plain Database and against a CachingDatabase in front of it.
+ * Fleet listings scan company/size cars, so they are expected to grow with size;
+ * everything else should not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    private final static int pageSize = 20;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"database", "caching"})
+    public String layer;
+
+    private SeededDatabase seeded;
+    private DatabaseInterface database;
+    private Company company;
+    private Car freeCar;
+    private Customer freeCustomer;
+    private PageCursor middleCursor;
+    private long addedCount;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        seeded = new SeededDatabase(size);
+        database = layer.equals("caching")
+                ? new CachingDatabase(seeded.getDatabase(), new DatabaseConfig())
+                : seeded.getDatabase();
+        company = database.getCompanyById(seeded.getCompanyIds().get(0));
+        freeCar = database.getCarById(seeded.getFreeCarId());
+        freeCustomer = database.getCustomerById(seeded.getFreeCustomerId());
+        middleCursor = PageCursor.after(seeded.getCarIds().get(size / 2));
+    }
+
+    /**
+     * Empty the rental ledger the rent/return benchmarks append to, so that every iteration
+     * starts from the seeded data.
+     */
+    @Setup(Level.Iteration)
+    public void clearRentals() {
+        try (Connection connection = seeded.openConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM RENTAL");
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        seeded.close();
+    }
+
+    @Benchmark
+    public List<Company> getAllCompanies() {
+        return database.getAllCompanies();
+    }
+
+    @Benchmark
+    public List<Car> getCompanyCars() {
+        return database.getCompanyCars(company);
+    }
+
+    @Benchmark
+    public List<Car> getAvailableCompanyCars() {
+        return database.getAvailableCompanyCars(company);
+    }
+
+    @Benchmark
+    public Page<Car> getCarsPage() {
+        return database.getCars(middleCursor, pageSize);
+    }
+
+    @Benchmark
+    public Page<Car> getCompanyCarsPage() {
+        return database.getCompanyCars(company, PageCursor.first(), pageSize);
+    }
+
+    @Benchmark
+    public Page<Customer> getCustomersPage() {
+        return database.getCustomers(middleCursor, pageSize);
+    }
+
+    @Benchmark
+    public Car addCar() {
+        return database.addCar(new Car(0, company.getId(), "bench-car-" + addedCount++));
+    }
+
+    @Benchmark
+    public Customer addCustomer() {
+        return database.addCustomer(new Customer(0, null, "bench-customer-" + addedCount++));
+    }
+
+    /**
+     * One conditional rental followed by the return. The car and customer end up as they were,
+     * but each return appends a RENTAL row until clearRentals empties the ledger.
+     */
+    @Benchmark
+    public boolean tryRentAndReturn() {
+        boolean rented = database.tryRent(freeCar, freeCustomer);
+        freeCustomer.setRentedCarId(freeCar.getId());
+        database.returnRentedCar(freeCustomer);
+        freeCustomer.setRentedCarId(null);
+        return rented;
+    }
+
+    /**
+     * Same as tryRentAndReturn with the unconditional rental.
+     */
+    @Benchmark
+    public void rentAndReturn() {
+        database.rentCarToCustomer(freeCar, freeCustomer);
+        freeCustomer.setRentedCarId(freeCar.getId());
+        database.returnRentedCar(freeCustomer);
+        freeCustomer.setRentedCarId(null);
+    }
+}
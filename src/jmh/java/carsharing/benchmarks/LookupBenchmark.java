@@ -0,0 +1,90 @@
+package carsharing.benchmarks;
+
+import carsharing.impementation.Database;
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.Customer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Primary key lookups. The cost per call should stay flat as the tables grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    private final static int batchLookupSize = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private SeededDatabase seeded;
+    private Database database;
+    private List<Integer> sampleCarIds;
+    private List<Integer> sampleCompanyIds;
+    private List<Integer> sampleCustomerIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        seeded = new SeededDatabase(size);
+        database = seeded.getDatabase();
+        sampleCarIds = SeededDatabase.sample(seeded.getCarIds(), batchLookupSize);
+        sampleCompanyIds = seeded.getCompanyIds();
+        sampleCustomerIds = SeededDatabase.sample(seeded.getCustomerIds(), batchLookupSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        seeded.close();
+    }
+
+    @Benchmark
+    public Car getCarById() {
+        return database.getCarById(sampleCarIds.get(_nextIndex(sampleCarIds.size())));
+    }
+
+    @Benchmark
+    public Company getCompanyById() {
+        return database.getCompanyById(sampleCompanyIds.get(_nextIndex(sampleCompanyIds.size())));
+    }
+
+    @Benchmark
+    public Customer getCustomerById() {
+        return database.getCustomerById(sampleCustomerIds.get(_nextIndex(sampleCustomerIds.size())));
+    }
+
+    @Benchmark
+    public List<Car> getCarsByIds() {
+        return database.getCarsByIds(sampleCarIds);
+    }
+
+    @Benchmark
+    public List<Company> getCompaniesByIds() {
+        return database.getCompaniesByIds(sampleCompanyIds);
+    }
+
+    private int _nextIndex(int bound) {
+        next = next + 1 < bound ? next + 1 : 0;
+        return next;
+    }
+}
@@ -0,0 +1,114 @@
+package carsharing.benchmarks;
+
+import carsharing.impementation.Database;
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Customer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Whole-table reads through the RowMappers.
+ * Run with the gc profiler (the default in build.gradle); gc.alloc.rate.norm divided by
+ * the table size gives the bytes allocated per mapped row.
+ * selectCars and selectCarsAsMaps read the same CAR ResultSet over one plain JDBC connection,
+ * into a Car or into a Map&lt;String, Object&gt; per row, to show what generic row maps cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    private final static String selectCarsSql = "SELECT ID, COMPANY_ID, NAME FROM CAR";
+
+    @Param({"100000"})
+    public int size;
+
+    private SeededDatabase seeded;
+    private Database database;
+    private Connection connection;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        seeded = new SeededDatabase(size);
+        database = seeded.getDatabase();
+        connection = seeded.openConnection();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+        seeded.close();
+    }
+
+    @Benchmark
+    public List<Car> getAllCars() {
+        return database.getAllCars();
+    }
+
+    @Benchmark
+    public List<Customer> getAllCustomers() {
+        return database.getAllCustomers();
+    }
+
+    @Benchmark
+    public long streamAllCars() {
+        try (Stream<Car> cars = database.streamAllCars()) {
+            return cars.count();
+        }
+    }
+
+    @Benchmark
+    public List<Car> selectCars() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(selectCarsSql);
+             ResultSet resultSet = statement.executeQuery()) {
+            List<Car> cars = new ArrayList<>(size);
+            while (resultSet.next()) {
+                cars.add(new Car(resultSet.getInt(1), resultSet.getInt(2), resultSet.getString(3)));
+            }
+            return cars;
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> selectCarsAsMaps() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(selectCarsSql);
+             ResultSet resultSet = statement.executeQuery()) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            List<Map<String, Object>> rows = new ArrayList<>(size);
+            while (resultSet.next()) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                for (int column = 1; column <= metaData.getColumnCount(); ++column) {
+                    row.put(metaData.getColumnLabel(column), resultSet.getObject(column));
+                }
+                rows.add(row);
+            }
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package carsharing.benchmarks;
+
+import carsharing.impementation.Database;
+import carsharing.impementation.DatabaseConfig;
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.Customer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Fresh H2 database in a temporary directory, filled through the bulk add methods.
+ * Cars are spread evenly over the companies and every other car of each fleet
+ * is rented by one of the first customers, so half of each fleet is available.
+ */
+class SeededDatabase implements AutoCloseable {
+
+    private final static int maxCompanies = 100;
+
+    private final Path directory;
+    private final Database database;
+    private final List<Integer> companyIds;
+    private final List<Integer> carIds;
+    private final List<Integer> customerIds;
+    private final int companyCount;
+
+    /**
+     * @param carCount Number of cars, the number of customers is the same.
+     */
+    SeededDatabase(int carCount) {
+
+        try {
+            directory = Files.createTempDirectory("carsharing-jmh");
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        database = new Database(directory.resolve("carsharing").toString(), new DatabaseConfig());
+
+        companyCount = Math.min(maxCompanies, carCount);
+        companyIds = database.addCompanies(() -> IntStream.range(0, companyCount)
+                .mapToObj(i -> new Company(0, "company-" + i)).iterator());
+        carIds = database.addCars(() -> IntStream.range(0, carCount)
+                .mapToObj(i -> new Car(0, companyIds.get(i % companyCount), "car-" + i)).iterator());
+        customerIds = database.addCustomers(() -> IntStream.range(0, carCount)
+                .mapToObj(i -> new Customer(0, null, "customer-" + i)).iterator());
+
+        Map<Integer, Integer> rentedCarIds = new HashMap<>();
+        for (int i = 0; i < carCount; ++i) {
+            if ((i / companyCount) % 2 == 0) {
+                rentedCarIds.put(customerIds.get(rentedCarIds.size()), carIds.get(i));
+            }
+        }
+        database.updateRentedCars(rentedCarIds);
+    }
+
+    Database getDatabase() {
+        return database;
+    }
+
+    List<Integer> getCompanyIds() {
+        return companyIds;
+    }
+
+    List<Integer> getCarIds() {
+        return carIds;
+    }
+
+    List<Integer> getCustomerIds() {
+        return customerIds;
+    }
+
+    /**
+     * Open a plain JDBC connection to the seeded database, outside the connection pool.
+     * The caller closes it before close().
+     */
+    Connection openConnection() {
+        try {
+            return DriverManager.getConnection("jdbc:h2:file:" + directory.resolve("carsharing"));
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Returns a car nobody rents.
+     */
+    int getFreeCarId() {
+        return carIds.get(Math.min(companyCount, carIds.size() - 1));
+    }
+
+    /**
+     * Returns a customer renting nothing.
+     */
+    int getFreeCustomerId() {
+        return customerIds.get(customerIds.size() - 1);
+    }
+
+    /**
+     * Returns up to count ids evenly spread over ids.
+     */
+    static List<Integer> sample(final List<Integer> ids, int count) {
+        List<Integer> sample = new ArrayList<>(count);
+        int step = Math.max(1, ids.size() / count);
+        for (int i = 0; i < ids.size() && sample.size() < count; i += step) {
+            sample.add(ids.get(i));
+        }
+        return sample;
+    }
+
+    /**
+     * Close the database and delete its files.
+     */
+    @Override
+    public void close() {
+        database.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -1,18 +1,113 @@
 package carsharing;
 
+import carsharing.impementation.AsyncDatabase;
+import carsharing.impementation.CachingDatabase;
+import carsharing.impementation.CsvImporter;
 import carsharing.impementation.Database;
+import carsharing.impementation.DatabaseConfig;
 import carsharing.impementation.DbManagerService;
+import carsharing.impementation.Durability;
+import carsharing.impementation.InstrumentedDatabase;
+import carsharing.impementation.LoadGenerator;
+import carsharing.impementation.LoadGeneratorConfig;
+import carsharing.impementation.NetworkService;
+import carsharing.impementation.ReportEngine;
+import carsharing.impementation.StorageProfile;
+import carsharing.impementation.WriteBehindDatabase;
 import carsharing.interfaces.DatabaseInterface;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+
 public class Main {
 
     public static void main(String[] args) {
 
         try {
-            DatabaseInterface database = new Database(_getDatabaseFilePath(args));
-            DbManagerService dbManager = new DbManagerService(database);
-            dbManager.start();
-        } catch (RuntimeException ex) {
+            DatabaseConfig config = new DatabaseConfig();
+            String batchSize = _getOption(args, "-batchSize");
+            if (batchSize != null) {
+                config.setBatchSize(Integer.parseInt(batchSize));
+            }
+            String durability = _getOption(args, "-durability");
+            if (durability != null) {
+                config.setRentalDurability(Durability.valueOf(durability.toUpperCase()));
+            }
+            String slowQueryMillis = _getOption(args, "-slowQueryMillis");
+            if (slowQueryMillis != null) {
+                config.setSlowQueryThresholdMillis(Long.parseLong(slowQueryMillis));
+            }
+            String slowQueryLog = _getOption(args, "-slowQueryLog");
+            if (slowQueryLog != null) {
+                config.setSlowQueryLogFile(slowQueryLog);
+            }
+            String storage = _getOption(args, "-storage");
+            if (storage != null) {
+                config.setStorageProfile(StorageProfile.valueOf(storage.toUpperCase()));
+            }
+            String reportParallelism = _getOption(args, "-reportParallelism");
+            if (reportParallelism != null) {
+                config.setReportParallelism(Integer.parseInt(reportParallelism));
+            }
+            Database database = new Database(_getDatabaseFilePath(args), config);
+            try {
+                String importFile = _getOption(args, "-importCsv");
+                if (importFile != null) {
+                    new CsvImporter(database, config.getBatchSize(), System.out)
+                            .importFile(Path.of(importFile));
+                    return;
+                }
+
+                if (_hasFlag(args, "-report")) {
+                    System.out.print(new ReportEngine(database, config).run());
+                    return;
+                }
+
+                WriteBehindDatabase writeBehindDatabase = new WriteBehindDatabase(database, config);
+                DatabaseInterface service = new CachingDatabase(writeBehindDatabase, config);
+                InstrumentedDatabase instrumentedDatabase = null;
+                if (_hasFlag(args, "-instrument")) {
+                    instrumentedDatabase = new InstrumentedDatabase(service);
+                    database.setQueryListener(instrumentedDatabase);
+                    instrumentedDatabase.registerMBean();
+                    service = instrumentedDatabase;
+                }
+                try {
+                    String servePort = _getOption(args, "-serve");
+                    if (servePort != null) {
+                        try (AsyncDatabase asyncDatabase = new AsyncDatabase(service, config);
+                             NetworkService networkService = new NetworkService(asyncDatabase,
+                                     new InetSocketAddress(Integer.parseInt(servePort)))) {
+                            networkService.run();
+                        }
+                        return;
+                    }
+
+                    String loadCustomers = _getOption(args, "-loadTest");
+                    if (loadCustomers != null) {
+                        LoadGeneratorConfig loadConfig = _getLoadConfig(args, loadCustomers)
+                                // In-memory databases drop the simulated customers at exit.
+                                .setKeepCustomers(config.getStorageProfile() == StorageProfile.MEMORY
+                                        || _hasFlag(args, "-loadKeepCustomers"));
+                        new LoadGenerator(service, loadConfig, System.out).run();
+                        System.out.printf("Connection pool: %s\n", database.getPoolMetrics());
+                        System.out.printf("Storage: %s\n", database.getStorageMetrics());
+                        if (instrumentedDatabase != null) {
+                            System.out.printf("\n%s", instrumentedDatabase.dump());
+                        }
+                        return;
+                    }
+
+                    DbManagerService dbManager = new DbManagerService(service);
+                    dbManager.start();
+                } finally {
+                    writeBehindDatabase.close();
+                }
+            } finally {
+                database.close();
+            }
+        } catch (RuntimeException | IOException ex) {
             System.err.printf("Error: %s\n", ex.getMessage());
             System.exit(1);
         }
@@ -20,11 +115,57 @@ public class Main {
 
     private static String _getDatabaseFilePath(String[] args) {
 
-        String databaseFileName = "carsharing";
-        if (args.length > 1 && args[0].equals("-databaseFileName")) {
-            databaseFileName = args[1];
+        String databaseFileName = _getOption(args, "-databaseFileName");
+        if (databaseFileName == null) {
+            databaseFileName = "carsharing";
         }
         String databaseDirPath = "./";
         return databaseDirPath + databaseFileName;
     }
+
+    private static LoadGeneratorConfig _getLoadConfig(String[] args, String customers) {
+
+        LoadGeneratorConfig loadConfig = new LoadGeneratorConfig()
+                .setCustomers(Integer.parseInt(customers));
+        String seconds = _getOption(args, "-loadSeconds");
+        if (seconds != null) {
+            loadConfig.setDurationSeconds(Long.parseLong(seconds));
+        }
+        String rate = _getOption(args, "-loadRate");
+        if (rate != null) {
+            loadConfig.setTargetFlowsPerSecond(Double.parseDouble(rate));
+        }
+        String holdMillis = _getOption(args, "-loadHoldMillis");
+        if (holdMillis != null) {
+            loadConfig.setHoldMillis(Long.parseLong(holdMillis));
+        }
+        String seed = _getOption(args, "-loadSeed");
+        if (seed != null) {
+            loadConfig.setSeed(Long.parseLong(seed));
+        }
+        return loadConfig.setHistogramFile(_getOption(args, "-loadHistogram"));
+    }
+
+    private static boolean _hasFlag(String[] args, String name) {
+
+        for (String arg : args) {
+            if (arg.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value following the named flag, or null if the flag is absent.
+     */
+    private static String _getOption(String[] args, String name) {
+
+        for (int i = 0; i + 1 < args.length; ++i) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
 }
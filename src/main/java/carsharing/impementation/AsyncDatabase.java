@@ -0,0 +1,307 @@
+package carsharing.impementation;
+
+import carsharing.interfaces.AsyncDatabaseInterface;
+import carsharing.interfaces.DatabaseInterface;
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.CompanyStats;
+import carsharing.valueobjects.Customer;
+import carsharing.valueobjects.Page;
+import carsharing.valueobjects.PageCursor;
+import carsharing.valueobjects.Rental;
+import carsharing.valueobjects.Reservation;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs DatabaseInterface calls on a fixed pool of worker threads and hands back futures.
+ * At most asyncMaxInFlight calls may be queued or running; beyond that, calls fail
+ * immediately with RejectedExecutionException so callers can back off instead of piling up.
+ * Size the worker pool to the connection pool, more threads only wait for connections.
+ */
+public class AsyncDatabase implements AsyncDatabaseInterface, AutoCloseable {
+
+    private final DatabaseInterface delegate;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore inFlightPermits;
+    private final int maxInFlight;
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AsyncDatabase(final DatabaseInterface delegate, final DatabaseConfig config) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.maxInFlight = config.getAsyncMaxInFlight();
+        this.inFlightPermits = new Semaphore(maxInFlight);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(config.getAsyncThreads(), config.getAsyncThreads(),
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "carsharing-async-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Returns the database the calls run against.
+     */
+    DatabaseInterface getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Run a unit of work against getDelegate() on the worker pool, under the same
+     * in-flight limit as the DatabaseInterface calls.
+     * @param call Work to run.
+     * @return Future of the result, failed with RejectedExecutionException when the limit is reached.
+     */
+    <T> CompletableFuture<T> submit(final Supplier<T> call) {
+        return _submit(call);
+    }
+
+    /**
+     * Returns a snapshot of executor statistics.
+     * @return AsyncDatabaseMetrics
+     */
+    public AsyncDatabaseMetrics getMetrics() {
+        return new AsyncDatabaseMetrics(
+                maxInFlight - inFlightPermits.availablePermits(),
+                executor.getQueue().size(),
+                maxQueueDepth.get(),
+                submitted.get(),
+                completed.get(),
+                failed.get(),
+                rejected.get());
+    }
+
+    /**
+     * Stop accepting calls and wait for the accepted ones to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Company> addCompany(final Company company) {
+        return _submit(() -> delegate.addCompany(company));
+    }
+
+    @Override
+    public CompletableFuture<Car> addCar(final Car car) {
+        return _submit(() -> delegate.addCar(car));
+    }
+
+    @Override
+    public CompletableFuture<Customer> addCustomer(final Customer customer) {
+        return _submit(() -> delegate.addCustomer(customer));
+    }
+
+    @Override
+    public CompletableFuture<List<Integer>> addCompanies(final Iterable<Company> companies) {
+        return _submit(() -> delegate.addCompanies(companies));
+    }
+
+    @Override
+    public CompletableFuture<List<Integer>> addCars(final Iterable<Car> cars) {
+        return _submit(() -> delegate.addCars(cars));
+    }
+
+    @Override
+    public CompletableFuture<List<Integer>> addCustomers(final Iterable<Customer> customers) {
+        return _submit(() -> delegate.addCustomers(customers));
+    }
+
+    @Override
+    public CompletableFuture<Integer> rentCarToCustomer(final Car car, final Customer customer) {
+        return _submit(() -> delegate.rentCarToCustomer(car, customer));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tryRent(final Car car, final Customer customer) {
+        return _submit(() -> delegate.tryRent(car, customer));
+    }
+
+    @Override
+    public CompletableFuture<Integer> returnRentedCar(final Customer customer) {
+        return _submit(() -> delegate.returnRentedCar(customer));
+    }
+
+    @Override
+    public CompletableFuture<Car> getCarById(final Integer id) {
+        return _submit(() -> delegate.getCarById(id));
+    }
+
+    @Override
+    public CompletableFuture<Company> getCompanyById(final Integer companyId) {
+        return _submit(() -> delegate.getCompanyById(companyId));
+    }
+
+    @Override
+    public CompletableFuture<Customer> getCustomerById(final Integer customerId) {
+        return _submit(() -> delegate.getCustomerById(customerId));
+    }
+
+    @Override
+    public CompletableFuture<List<Car>> getCarsByIds(final Collection<Integer> ids) {
+        return _submit(() -> delegate.getCarsByIds(ids));
+    }
+
+    @Override
+    public CompletableFuture<List<Company>> getCompaniesByIds(final Collection<Integer> companyIds) {
+        return _submit(() -> delegate.getCompaniesByIds(companyIds));
+    }
+
+    @Override
+    public CompletableFuture<List<Company>> getAllCompanies() {
+        return _submit(() -> delegate.getAllCompanies());
+    }
+
+    @Override
+    public CompletableFuture<List<Car>> getAllCars() {
+        return _submit(() -> delegate.getAllCars());
+    }
+
+    @Override
+    public CompletableFuture<List<Car>> getCompanyCars(final Company company) {
+        return _submit(() -> delegate.getCompanyCars(company));
+    }
+
+    @Override
+    public CompletableFuture<List<Car>> getAvailableCompanyCars(final Company company) {
+        return _submit(() -> delegate.getAvailableCompanyCars(company));
+    }
+
+    @Override
+    public CompletableFuture<List<Customer>> getAllCustomers() {
+        return _submit(() -> delegate.getAllCustomers());
+    }
+
+    @Override
+    public CompletableFuture<Page<Company>> getCompanies(final PageCursor cursor, int pageSize) {
+        return _submit(() -> delegate.getCompanies(cursor, pageSize));
+    }
+
+    @Override
+    public CompletableFuture<Page<Car>> getCars(final PageCursor cursor, int pageSize) {
+        return _submit(() -> delegate.getCars(cursor, pageSize));
+    }
+
+    @Override
+    public CompletableFuture<Page<Car>> getCompanyCars(final Company company, final PageCursor cursor, int pageSize) {
+        return _submit(() -> delegate.getCompanyCars(company, cursor, pageSize));
+    }
+
+    @Override
+    public CompletableFuture<Page<Customer>> getCustomers(final PageCursor cursor, int pageSize) {
+        return _submit(() -> delegate.getCustomers(cursor, pageSize));
+    }
+
+    @Override
+    public CompletableFuture<List<Customer>> findCustomers(final String namePrefix, int limit) {
+        return _submit(() -> delegate.findCustomers(namePrefix, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<Rental>> getCarRentals(final Car car, final Instant from, final Instant to) {
+        return _submit(() -> delegate.getCarRentals(car, from, to));
+    }
+
+    @Override
+    public CompletableFuture<List<Rental>> getActiveRentals(final Instant at) {
+        return _submit(() -> delegate.getActiveRentals(at));
+    }
+
+    @Override
+    public CompletableFuture<CompanyStats> getCompanyStats(final Company company) {
+        return _submit(() -> delegate.getCompanyStats(company));
+    }
+
+    @Override
+    public CompletableFuture<List<CompanyStats>> getAllCompanyStats() {
+        return _submit(delegate::getAllCompanyStats);
+    }
+
+    @Override
+    public CompletableFuture<Reservation> reserveCar(final Car car, final Customer customer,
+                                                     final Instant start, final Instant end) {
+        return _submit(() -> delegate.reserveCar(car, customer, start, end));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> cancelReservation(final Reservation reservation) {
+        return _submit(() -> delegate.cancelReservation(reservation));
+    }
+
+    @Override
+    public CompletableFuture<List<Reservation>> getCustomerReservations(final Customer customer) {
+        return _submit(() -> delegate.getCustomerReservations(customer));
+    }
+
+    @Override
+    public CompletableFuture<List<Reservation>> getUpcomingReservations(final Instant after) {
+        return _submit(() -> delegate.getUpcomingReservations(after));
+    }
+
+    @Override
+    public CompletableFuture<List<Car>> getFreeCompanyCars(final Company company,
+                                                           final Instant from, final Instant to) {
+        return _submit(() -> delegate.getFreeCompanyCars(company, from, to));
+    }
+
+    // UTILITY METHODS --------------------------------------------------------
+
+    private <T> CompletableFuture<T> _submit(final Supplier<T> call) {
+
+        if (!inFlightPermits.tryAcquire()) {
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Too many database calls in flight: " + maxInFlight));
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        submitted.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                T result;
+                try {
+                    result = call.get();
+                } catch (Throwable ex) {
+                    inFlightPermits.release();
+                    failed.incrementAndGet();
+                    future.completeExceptionally(ex);
+                    return;
+                }
+                // Free the slot before completing, dependent stages may submit right away.
+                inFlightPermits.release();
+                completed.incrementAndGet();
+                future.complete(result);
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlightPermits.release();
+            submitted.decrementAndGet();
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(ex);
+        }
+        maxQueueDepth.accumulateAndGet(executor.getQueue().size(), Math::max);
+        return future;
+    }
+}
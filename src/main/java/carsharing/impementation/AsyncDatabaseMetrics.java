@@ -0,0 +1,70 @@
+package carsharing.impementation;
+
+/**
+ * Point-in-time snapshot of AsyncDatabase statistics.
+ */
+public class AsyncDatabaseMetrics {
+
+    private final int inFlight;
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final long submitted;
+    private final long completed;
+    private final long failed;
+    private final long rejected;
+
+    public AsyncDatabaseMetrics(int inFlight, int queueDepth, int maxQueueDepth,
+                                long submitted, long completed, long failed, long rejected) {
+        this.inFlight = inFlight;
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.submitted = submitted;
+        this.completed = completed;
+        this.failed = failed;
+        this.rejected = rejected;
+    }
+
+    /**
+     * Calls accepted but not finished yet, queued or running.
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Calls waiting for a worker thread.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Calls refused because the in-flight limit was reached.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "inFlight=%d queueDepth=%d maxQueueDepth=%d submitted=%d completed=%d failed=%d rejected=%d",
+                inFlight, queueDepth, maxQueueDepth, submitted, completed, failed, rejected);
+    }
+}
@@ -0,0 +1,245 @@
+package carsharing.impementation;
+
+import carsharing.valueobjects.Car;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory index of which cars are free to rent, grouped by company.
+ * Every car gets a dense slot within its company fleet, and availability is one bit per slot
+ * in fixed-size atomic bitset chunks. Bits are flipped with a CAS and each chunk counts its set
+ * bits, so listing skips chunks without a free car and empty words in the others: readers never
+ * lock, and a mostly rented fleet costs one read per chunk rather than one per word.
+ * Writers count the rentals of a car under the lock of its slot and show the car rented while
+ * the count is positive; rentals and releases reported by the database may therefore arrive
+ * in any order and still leave the index agreeing with it.
+ * Each fleet also counts its rented cars as bits flip, so fleet sizes are read in O(1).
+ */
+class AvailabilityIndex {
+
+    private final static int chunkShift = 12;
+    private final static int chunkSize = 1 << chunkShift;
+    private final static int wordsPerChunk = chunkSize / Long.SIZE;
+
+    /**
+     * Cars of one company. Slots are appended under the fleet lock and published
+     * by the volatile size write; availability bits are only ever flipped by CAS.
+     */
+    private static class Fleet {
+
+        private volatile Car[][] carChunks = new Car[0][];
+        private volatile AtomicLongArray[] bitChunks = new AtomicLongArray[0];
+        // Set bits per chunk, updated right after the CAS that flips one.
+        private volatile AtomicInteger[] availableCounts = new AtomicInteger[0];
+        private volatile int size;
+        private final AtomicInteger rentedCount = new AtomicInteger();
+
+        synchronized int append(final Car car, boolean available) {
+            int slot = size;
+            int chunk = slot >>> chunkShift;
+            if (chunk == carChunks.length) {
+                Car[][] newCarChunks = Arrays.copyOf(carChunks, chunk + 1);
+                newCarChunks[chunk] = new Car[chunkSize];
+                AtomicLongArray[] newBitChunks = Arrays.copyOf(bitChunks, chunk + 1);
+                newBitChunks[chunk] = new AtomicLongArray(wordsPerChunk);
+                AtomicInteger[] newAvailableCounts = Arrays.copyOf(availableCounts, chunk + 1);
+                newAvailableCounts[chunk] = new AtomicInteger();
+                carChunks = newCarChunks;
+                bitChunks = newBitChunks;
+                availableCounts = newAvailableCounts;
+            }
+            carChunks[chunk][slot & (chunkSize - 1)] = car;
+            if (available) {
+                setBit(slot, true);
+            }
+            size = slot + 1;
+            if (!available) {
+                rentedCount.incrementAndGet();
+            }
+            return slot;
+        }
+
+        /**
+         * Atomically flip the bit of slot to the requested state.
+         * @return false if the bit was already in that state.
+         */
+        boolean setBit(int slot, boolean available) {
+            AtomicLongArray words = bitChunks[slot >>> chunkShift];
+            int word = (slot & (chunkSize - 1)) >>> 6;
+            long mask = 1L << (slot & 63);
+            for (;;) {
+                long current = words.get(word);
+                boolean isAvailable = (current & mask) != 0;
+                if (isAvailable == available) {
+                    return false;
+                }
+                long updated = available ? current | mask : current & ~mask;
+                if (words.compareAndSet(word, current, updated)) {
+                    availableCounts[slot >>> chunkShift].addAndGet(available ? 1 : -1);
+                    // append sets the bit of a free car before publishing its slot
+                    if (slot < size) {
+                        rentedCount.addAndGet(available ? -1 : 1);
+                    }
+                    return true;
+                }
+            }
+        }
+
+        boolean isAvailable(int slot) {
+            AtomicLongArray words = bitChunks[slot >>> chunkShift];
+            return (words.get((slot & (chunkSize - 1)) >>> 6) & (1L << (slot & 63))) != 0;
+        }
+
+        List<Car> availableCars() {
+            int count = size;
+            Car[][] cars = carChunks;
+            AtomicLongArray[] bits = bitChunks;
+            AtomicInteger[] counts = availableCounts;
+            List<Car> result = new ArrayList<>();
+            for (int chunk = 0; chunk * chunkSize < count; ++chunk) {
+                if (counts[chunk].get() == 0) {
+                    continue;
+                }
+                AtomicLongArray words = bits[chunk];
+                for (int word = 0; word < wordsPerChunk; ++word) {
+                    long value = words.get(word);
+                    while (value != 0) {
+                        int bit = Long.numberOfTrailingZeros(value);
+                        int slot = (chunk << chunkShift) + (word << 6) + bit;
+                        if (slot >= count) {
+                            return result;
+                        }
+                        result.add(cars[chunk][slot & (chunkSize - 1)]);
+                        value &= value - 1;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class Slot {
+        final Fleet fleet;
+        final int index;
+        // Rentals minus releases seen so far, guarded by the slot.
+        int rentals;
+
+        Slot(Fleet fleet, int index, int rentals) {
+            this.fleet = fleet;
+            this.index = index;
+            this.rentals = rentals;
+        }
+
+        synchronized void addRentals(int delta) {
+            rentals += delta;
+            fleet.setBit(index, rentals <= 0);
+        }
+
+        synchronized boolean claim() {
+            if (rentals > 0) {
+                return false;
+            }
+            addRentals(1);
+            return true;
+        }
+    }
+
+    private final Map<Integer, Fleet> fleets = new ConcurrentHashMap<>();
+    private final Map<Integer, Slot> slots = new ConcurrentHashMap<>();
+
+    /**
+     * Register a car, ignoring cars that are already indexed.
+     * @param car Car to add.
+     * @param available Whether the car is currently free.
+     */
+    void addCar(final Car car, boolean available) {
+        Fleet fleet = fleets.computeIfAbsent(car.getCompanyId(), companyId -> new Fleet());
+        synchronized (fleet) {
+            if (!slots.containsKey(car.getId())) {
+                slots.put(car.getId(), new Slot(fleet, fleet.append(car, available), available ? 0 : 1));
+            }
+        }
+    }
+
+    boolean containsCar(int carId) {
+        return slots.containsKey(carId);
+    }
+
+    boolean containsCompany(int companyId) {
+        return fleets.containsKey(companyId);
+    }
+
+    /**
+     * Atomically mark a free car as rented, before the database confirms it.
+     * Undo with markReturned if the database refuses the rental.
+     * @param carId Car to rent.
+     * @return false if the car is already rented or is not indexed.
+     */
+    boolean claim(int carId) {
+        Slot slot = slots.get(carId);
+        return slot != null && slot.claim();
+    }
+
+    /**
+     * Count a rental of a car the database made, ignoring cars that are not indexed.
+     * @param carId Rented car.
+     */
+    void markRented(int carId) {
+        Slot slot = slots.get(carId);
+        if (slot != null) {
+            slot.addRentals(1);
+        }
+    }
+
+    /**
+     * Count a release of a car the database made, ignoring cars that are not indexed.
+     * @param carId Returned car.
+     */
+    void markReturned(int carId) {
+        Slot slot = slots.get(carId);
+        if (slot != null) {
+            slot.addRentals(-1);
+        }
+    }
+
+    boolean isAvailable(int carId) {
+        Slot slot = slots.get(carId);
+        return slot != null && slot.fleet.isAvailable(slot.index);
+    }
+
+    /**
+     * Returns the number of indexed cars of a company.
+     * @param companyId Company id.
+     * @return Car count, 0 for unknown companies.
+     */
+    int getCarCount(int companyId) {
+        Fleet fleet = fleets.get(companyId);
+        return fleet == null ? 0 : fleet.size;
+    }
+
+    /**
+     * Returns the number of rented cars of a company, never more than getCarCount.
+     * @param companyId Company id.
+     * @return Rented car count, 0 for unknown companies.
+     */
+    int getRentedCount(int companyId) {
+        Fleet fleet = fleets.get(companyId);
+        return fleet == null ? 0 : fleet.rentedCount.get();
+    }
+
+    /**
+     * Returns free cars of a company in the order they were indexed.
+     * @param companyId Company id.
+     * @return List<Car>, empty for unknown companies.
+     */
+    List<Car> getAvailableCars(int companyId) {
+        Fleet fleet = fleets.get(companyId);
+        return fleet == null ? new ArrayList<>() : fleet.availableCars();
+    }
+}
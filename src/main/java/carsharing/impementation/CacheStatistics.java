@@ -0,0 +1,56 @@
+package carsharing.impementation;
+
+/**
+ * Point-in-time snapshot of cache statistics.
+ */
+public class CacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+
+    public CacheStatistics(long hits, long misses, long evictions, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    /**
+     * Sum of this and other statistics.
+     * @param other Statistics to add.
+     * @return CacheStatistics
+     */
+    public CacheStatistics plus(final CacheStatistics other) {
+        return new CacheStatistics(hits + other.hits, misses + other.misses,
+                evictions + other.evictions, size + other.size);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d hitRate=%.1f%% evictions=%d size=%d",
+                hits, misses, getHitRate() * 100.0, evictions, size);
+    }
+}
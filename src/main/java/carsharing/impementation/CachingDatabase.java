@@ -0,0 +1,425 @@
+package carsharing.impementation;
+
+import carsharing.interfaces.DatabaseInterface;
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.CompanyStats;
+import carsharing.valueobjects.Customer;
+import carsharing.valueobjects.Reservation;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * DatabaseInterface decorator keeping companies and cars in memory.
+ * Reads are served from the caches, writes go to the database first and then update the caches.
+ * Car availability is answered from an AvailabilityIndex built once at construction
+ * and kept current from the cars the database reports as rented and released; its per-company counters
+ * answer getCompanyStats without touching the database.
+ * Bookings ending after construction are kept in a ReservationIndex, so booking conflicts
+ * and free cars over a period are answered per car in O(log n) of its bookings.
+ * A car booked by someone else right now can't be rented, and a car rented right now
+ * is not free for a period including now.
+ */
+public class CachingDatabase extends ForwardingDatabase {
+
+    private final static String allCompaniesKey = "all";
+    private final ExpiringLruCache<String, List<Company>> allCompaniesCache;
+    private final ExpiringLruCache<Integer, Company> companyCache;
+    private final ExpiringLruCache<Integer, List<Car>> companyCarsCache;
+    private final ExpiringLruCache<Integer, Car> carCache;
+    private final AvailabilityIndex availabilityIndex = new AvailabilityIndex();
+    private final ReservationIndex reservationIndex = new ReservationIndex(Instant.now());
+
+    public CachingDatabase(final DatabaseInterface delegate, final DatabaseConfig config) {
+        super(delegate);
+        int maxEntries = Objects.requireNonNull(config).getCacheMaxEntries();
+        long ttlMillis = config.getCacheTtlMillis();
+        allCompaniesCache = new ExpiringLruCache<>(1, ttlMillis);
+        companyCache = new ExpiringLruCache<>(maxEntries, ttlMillis);
+        companyCarsCache = new ExpiringLruCache<>(maxEntries, ttlMillis);
+        carCache = new ExpiringLruCache<>(maxEntries, ttlMillis);
+        _buildAvailabilityIndex();
+        delegate.getUpcomingReservations(reservationIndex.getIndexedFrom()).forEach(reservationIndex::add);
+    }
+
+    /**
+     * Add specified company to database and write it through to the caches.
+     * @param company Company to add.
+     * @return Persisted Company with the generated id.
+     */
+    @Override
+    public Company addCompany(final Company company) {
+        Company persistedCompany = delegate.addCompany(company);
+        companyCache.put(persistedCompany.getId(), persistedCompany);
+        allCompaniesCache.computeIfPresent(allCompaniesKey,
+                companies -> _append(companies, persistedCompany));
+        return persistedCompany;
+    }
+
+    /**
+     * Add specified car to database, write it through to the caches
+     * and index it as available.
+     * @param car Car to add.
+     * @return Persisted Car with the generated id.
+     */
+    @Override
+    public Car addCar(final Car car) {
+        Car persistedCar = delegate.addCar(car);
+        carCache.put(persistedCar.getId(), persistedCar);
+        companyCarsCache.computeIfPresent(persistedCar.getCompanyId(),
+                cars -> _append(cars, persistedCar));
+        availabilityIndex.addCar(persistedCar, true);
+        return persistedCar;
+    }
+
+    /**
+     * Add companies to database and drop the cached company list.
+     * @param companies Companies to add.
+     * @return Generated ids in insertion order.
+     */
+    @Override
+    public List<Integer> addCompanies(final Iterable<Company> companies) {
+        List<Integer> ids = delegate.addCompanies(companies);
+        allCompaniesCache.invalidate(allCompaniesKey);
+        return ids;
+    }
+
+    /**
+     * Add cars to database, drop the cached car lists of their companies
+     * and index the new cars as available.
+     * @param cars Cars to add.
+     * @return Generated ids in insertion order.
+     */
+    @Override
+    public List<Integer> addCars(final Iterable<Car> cars) {
+        List<Car> carList = new ArrayList<>();
+        Objects.requireNonNull(cars).forEach(carList::add);
+        List<Integer> ids = delegate.addCars(carList);
+        Iterator<Integer> idIterator = ids.iterator();
+        for (Car car : carList) {
+            Car persistedCar = new Car(idIterator.next(), car.getCompanyId(), car.getName());
+            companyCarsCache.invalidate(persistedCar.getCompanyId());
+            availabilityIndex.addCar(persistedCar, true);
+        }
+        return ids;
+    }
+
+    /**
+     * Rent in the database, then index the car it rented and the one it released.
+     * @param car Car to rent.
+     * @param customer Customer renting the car.
+     * @return Id of the car the customer held before, or null.
+     */
+    @Override
+    public Integer rentCarToCustomer(final Car car, final Customer customer) {
+        Integer releasedCarId = delegate.rentCarToCustomer(car, customer);
+        if (releasedCarId != null) {
+            availabilityIndex.markReturned(releasedCarId);
+        }
+        availabilityIndex.markRented(Objects.requireNonNull(car).getId());
+        return releasedCarId;
+    }
+
+    /**
+     * Refuse cars another customer has booked for now, then claim the car in the availability
+     * index, so losers of a race fail without a database round trip, then confirm the rental in the database.
+     * @param car Car to rent.
+     * @param customer Customer renting the car.
+     * @return true if the car was rented.
+     */
+    @Override
+    public boolean tryRent(final Car car, final Customer customer) {
+        Reservation booking = reservationIndex.getReservationAt(Objects.requireNonNull(car).getId(), Instant.now());
+        if (booking != null && booking.getCustomerId() != Objects.requireNonNull(customer).getId()) {
+            return false;
+        }
+        boolean indexed = availabilityIndex.containsCar(Objects.requireNonNull(car).getId());
+        if (indexed && !availabilityIndex.claim(car.getId())) {
+            return false;
+        }
+        boolean rented = false;
+        try {
+            rented = delegate.tryRent(car, customer);
+        } finally {
+            if (!rented && indexed) {
+                availabilityIndex.markReturned(car.getId());
+            }
+        }
+        return rented;
+    }
+
+    /**
+     * Return in the database, then index the car it actually released;
+     * the caller's Customer may be stale.
+     * @param customer Customer returning its car.
+     * @return Id of the released car, or null if the customer held none.
+     */
+    @Override
+    public Integer returnRentedCar(final Customer customer) {
+        Integer releasedCarId = delegate.returnRentedCar(customer);
+        if (releasedCarId != null) {
+            availabilityIndex.markReturned(releasedCarId);
+        }
+        return releasedCarId;
+    }
+
+    @Override
+    public Car getCarById(final Integer id) {
+        Car car = carCache.get(Objects.requireNonNull(id));
+        if (car == null) {
+            car = delegate.getCarById(id);
+            if (car.getId() != -1) {
+                carCache.put(id, car);
+            }
+        }
+        return car;
+    }
+
+    @Override
+    public Company getCompanyById(final Integer companyId) {
+        Company company = companyCache.get(Objects.requireNonNull(companyId));
+        if (company == null) {
+            company = delegate.getCompanyById(companyId);
+            if (company.getId() != -1) {
+                companyCache.put(companyId, company);
+            }
+        }
+        return company;
+    }
+
+    /**
+     * Returns Car objects with the specified ids, fetching only the uncached ones.
+     * @param ids Car ids to search for.
+     * @return List<Car>
+     */
+    @Override
+    public List<Car> getCarsByIds(final Collection<Integer> ids) {
+        List<Car> cars = new ArrayList<>(ids.size());
+        List<Integer> missingIds = new ArrayList<>();
+        for (Integer id : ids) {
+            Car car = carCache.get(id);
+            if (car == null) {
+                missingIds.add(id);
+            } else {
+                cars.add(car);
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            for (Car car : delegate.getCarsByIds(missingIds)) {
+                carCache.put(car.getId(), car);
+                cars.add(car);
+            }
+        }
+        return cars;
+    }
+
+    /**
+     * Returns Company objects with the specified ids, fetching only the uncached ones.
+     * @param companyIds Company ids to search for.
+     * @return List<Company>
+     */
+    @Override
+    public List<Company> getCompaniesByIds(final Collection<Integer> companyIds) {
+        List<Company> companies = new ArrayList<>(companyIds.size());
+        List<Integer> missingIds = new ArrayList<>();
+        for (Integer companyId : companyIds) {
+            Company company = companyCache.get(companyId);
+            if (company == null) {
+                missingIds.add(companyId);
+            } else {
+                companies.add(company);
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            for (Company company : delegate.getCompaniesByIds(missingIds)) {
+                companyCache.put(company.getId(), company);
+                companies.add(company);
+            }
+        }
+        return companies;
+    }
+
+    @Override
+    public List<Company> getAllCompanies() {
+        return allCompaniesCache.get(allCompaniesKey, () -> {
+            List<Company> companies = List.copyOf(delegate.getAllCompanies());
+            companies.forEach(company -> companyCache.put(company.getId(), company));
+            return companies;
+        });
+    }
+
+    @Override
+    public List<Car> getCompanyCars(final Company company) {
+        return companyCarsCache.get(Objects.requireNonNull(company).getId(), () -> {
+            List<Car> cars = List.copyOf(delegate.getCompanyCars(company));
+            cars.forEach(car -> carCache.put(car.getId(), car));
+            return cars;
+        });
+    }
+
+    /**
+     * Returns a List of available cars for this company from the availability index.
+     * @param company Company object.
+     * @return List<Car>
+     */
+    @Override
+    public List<Car> getAvailableCompanyCars(final Company company) {
+        if (!availabilityIndex.containsCompany(Objects.requireNonNull(company).getId())) {
+            return delegate.getAvailableCompanyCars(company);
+        }
+        return availabilityIndex.getAvailableCars(company.getId());
+    }
+
+    /**
+     * Returns the fleet counts of a company from the availability index in O(1).
+     * @param company Company object.
+     * @return CompanyStats
+     */
+    @Override
+    public CompanyStats getCompanyStats(final Company company) {
+        if (!availabilityIndex.containsCompany(Objects.requireNonNull(company).getId())) {
+            return delegate.getCompanyStats(company);
+        }
+        return _indexedCompanyStats(company);
+    }
+
+    /**
+     * Returns the fleet counts of every cached company, ordered by company id.
+     * @return List<CompanyStats>
+     */
+    @Override
+    public List<CompanyStats> getAllCompanyStats() {
+        List<CompanyStats> stats = new ArrayList<>();
+        for (Company company : getAllCompanies()) {
+            stats.add(availabilityIndex.containsCompany(company.getId())
+                    ? _indexedCompanyStats(company)
+                    : new CompanyStats(company.getId(), company.getName(), 0, 0));
+        }
+        stats.sort(Comparator.comparingInt(CompanyStats::getCompanyId));
+        return stats;
+    }
+
+    /**
+     * Refuse bookings that collide with an indexed one without a database round trip,
+     * then let the database decide and index the booking it accepted.
+     * The period is checked at the precision the database stores, see Database.toStoredTime.
+     * @param car Car to book.
+     * @param customer Customer booking the car.
+     * @param requestedStart Start of the booking, inclusive.
+     * @param requestedEnd End of the booking, exclusive.
+     * @return Persisted Reservation, or one with id -1 if the car is booked in that period.
+     */
+    @Override
+    public Reservation reserveCar(final Car car, final Customer customer,
+                                  final Instant requestedStart, final Instant requestedEnd) {
+        Instant start = Database.toStoredTime(requestedStart);
+        Instant end = Database.toStoredTime(requestedEnd);
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("Empty time window: " + start + " to " + end);
+        }
+        if (!reservationIndex.isFree(Objects.requireNonNull(car).getId(), start, end)) {
+            return new Reservation(-1, Objects.requireNonNull(customer).getId(), car.getId(), start, end);
+        }
+        Reservation reservation = delegate.reserveCar(car, customer, start, end);
+        if (reservation.getId() != -1) {
+            reservationIndex.add(reservation);
+        }
+        return reservation;
+    }
+
+    @Override
+    public boolean cancelReservation(final Reservation reservation) {
+        boolean cancelled = delegate.cancelReservation(reservation);
+        reservationIndex.remove(reservation);
+        return cancelled;
+    }
+
+    /**
+     * Returns the cached cars of a company that no indexed booking overlaps
+     * and, for a period including now, that the availability index shows free.
+     * Periods starting before the reservation index answers go to the database.
+     * @param company Company object.
+     * @param requestedFrom Start of the period, inclusive.
+     * @param requestedTo End of the period, exclusive.
+     * @return List<Car>
+     */
+    @Override
+    public List<Car> getFreeCompanyCars(final Company company, final Instant requestedFrom, final Instant requestedTo) {
+        Instant from = Database.toStoredTime(requestedFrom);
+        Instant to = Database.toStoredTime(requestedTo);
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Empty time window: " + from + " to " + to);
+        }
+        boolean coversNow = ReservationIndex.coversNow(from, to);
+        if (from.isBefore(reservationIndex.getIndexedFrom())
+                || (coversNow && !availabilityIndex.containsCompany(Objects.requireNonNull(company).getId()))) {
+            return delegate.getFreeCompanyCars(company, from, to);
+        }
+        List<Car> freeCars = new ArrayList<>();
+        for (Car car : getCompanyCars(company)) {
+            if (reservationIndex.isFree(car.getId(), from, to)
+                    && (!coversNow || availabilityIndex.isAvailable(car.getId()))) {
+                freeCars.add(car);
+            }
+        }
+        return freeCars;
+    }
+
+    /**
+     * Returns combined hit/miss statistics of all fleet caches.
+     * @return CacheStatistics
+     */
+    public CacheStatistics getCacheStatistics() {
+        return allCompaniesCache.getStatistics()
+                .plus(companyCache.getStatistics())
+                .plus(companyCarsCache.getStatistics())
+                .plus(carCache.getStatistics());
+    }
+
+    /**
+     * Drop every cached entry, e.g. after the database was changed behind this cache's back.
+     */
+    public void invalidateAll() {
+        allCompaniesCache.invalidateAll();
+        companyCache.invalidateAll();
+        companyCarsCache.invalidateAll();
+        carCache.invalidateAll();
+    }
+
+    private CompanyStats _indexedCompanyStats(final Company company) {
+        int totalCars = availabilityIndex.getCarCount(company.getId());
+        int rentedCars = Math.min(totalCars, availabilityIndex.getRentedCount(company.getId()));
+        return new CompanyStats(company.getId(), company.getName(), totalCars, rentedCars);
+    }
+
+    private static <T> List<T> _append(final List<T> list, final T item) {
+        List<T> appended = new ArrayList<>(list.size() + 1);
+        appended.addAll(list);
+        appended.add(item);
+        return List.copyOf(appended);
+    }
+
+    /**
+     * Index every car once, marking the ones some customer holds as rented.
+     */
+    private void _buildAvailabilityIndex() {
+        Set<Integer> rentedCarIds = new HashSet<>();
+        try (Stream<Customer> customers = delegate.streamAllCustomers()) {
+            customers.map(Customer::getRentedCarId)
+                    .filter(Objects::nonNull)
+                    .forEach(rentedCarIds::add);
+        }
+        try (Stream<Car> cars = delegate.streamAllCars()) {
+            cars.forEach(car -> availabilityIndex.addCar(car, !rentedCarIds.contains(car.getId())));
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package carsharing.impementation;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of long-lived JDBC connections.
+ * Idle connections are reused most-recently-returned first, so under load
+ * callers keep hitting the same warm connections.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private final String connectionUrl;
+    private final String dbUser;
+    private final String dbPassword;
+    private final DatabaseConfig config;
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+    private final Set<PooledConnection> borrowedConnections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalBorrowWaitNanos = new AtomicLong();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private volatile boolean closed;
+
+    public ConnectionPool(final String connectionUrl, final String dbUser,
+                          final String dbPassword, final DatabaseConfig config) {
+        this.connectionUrl = Objects.requireNonNull(connectionUrl);
+        this.dbUser = Objects.requireNonNull(dbUser);
+        this.dbPassword = Objects.requireNonNull(dbPassword);
+        this.config = Objects.requireNonNull(config);
+        this.permits = new Semaphore(config.getMaxPoolSize(), true);
+    }
+
+    /**
+     * Borrow a connection, waiting up to the configured timeout for one to free up.
+     * @return PooledConnection, close it to hand it back.
+     * @throws SQLException If no connection became available or opening one failed.
+     */
+    public PooledConnection borrow() throws SQLException {
+
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(config.getConnectionTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.incrementAndGet();
+                throw new SQLTimeoutException(String.format(
+                        "No connection available within %d ms (pool size %d)",
+                        config.getConnectionTimeoutMillis(), config.getMaxPoolSize()));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", ex);
+        }
+        long now = System.nanoTime();
+        _recordBorrowWait(now - waitStart);
+
+        PooledConnection pooledConnection;
+        try {
+            pooledConnection = _pollValidIdle(now);
+            if (pooledConnection == null) {
+                pooledConnection = _open();
+            }
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+        pooledConnection.markBorrowed(now);
+        borrowedConnections.add(pooledConnection);
+        _detectLeaks(now);
+        return pooledConnection;
+    }
+
+    /**
+     * Returns a snapshot of pool statistics.
+     * @return ConnectionPoolMetrics
+     */
+    public ConnectionPoolMetrics getMetrics() {
+        return new ConnectionPoolMetrics(
+                borrowedConnections.size(),
+                idleConnections.size(),
+                borrowCount.get(),
+                totalBorrowWaitNanos.get(),
+                maxBorrowWaitNanos.get(),
+                borrowTimeouts.get(),
+                leaksDetected.get(),
+                createdCount.get(),
+                destroyedCount.get(),
+                statementCacheHits.get(),
+                statementCacheMisses.get());
+    }
+
+    /**
+     * Close all idle connections and refuse further borrows.
+     * Borrowed connections are closed as they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            _destroy(pooledConnection);
+        }
+    }
+
+    /**
+     * Hand a borrowed connection back to the pool.
+     * @param pooledConnection Connection to return.
+     */
+    void release(final PooledConnection pooledConnection) {
+
+        if (!borrowedConnections.remove(pooledConnection)) {
+            return;
+        }
+        try {
+            pooledConnection.closeUncachedStatements();
+            long now = System.nanoTime();
+            if (closed || !_resetForReuse(pooledConnection)) {
+                _destroy(pooledConnection);
+            } else {
+                pooledConnection.markIdle(now);
+                idleConnections.offerFirst(pooledConnection);
+                _evictExpiredIdle(now);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // UTILITY METHODS --------------------------------------------------------
+
+    private PooledConnection _open() throws SQLException {
+        Connection connection = DriverManager.getConnection(connectionUrl, dbUser, dbPassword);
+        createdCount.incrementAndGet();
+        StatementCache statementCache = new StatementCache(connection,
+                config.getStatementCacheSize(), statementCacheHits, statementCacheMisses);
+        return new PooledConnection(this, connection, statementCache);
+    }
+
+    private void _destroy(final PooledConnection pooledConnection) {
+        pooledConnection.closeQuietly();
+        destroyedCount.incrementAndGet();
+    }
+
+    /**
+     * Take the most recently used idle connection that is still usable,
+     * discarding expired or broken ones on the way. Only connections idle for longer than
+     * validationIdleMillis are checked: one returned moments ago was working then, and
+     * a round trip per borrow would cost more than the query on a busy pool.
+     */
+    private PooledConnection _pollValidIdle(long now) {
+
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            if (_isExpired(pooledConnection, now) || !_isValid(pooledConnection, now)) {
+                _destroy(pooledConnection);
+                continue;
+            }
+            return pooledConnection;
+        }
+        return null;
+    }
+
+    /**
+     * Close idle connections from the cold end of the deque that exceeded the idle timeout.
+     */
+    private void _evictExpiredIdle(long now) {
+
+        PooledConnection oldest;
+        while ((oldest = idleConnections.peekLast()) != null && _isExpired(oldest, now)) {
+            if (idleConnections.removeLastOccurrence(oldest)) {
+                _destroy(oldest);
+            }
+        }
+    }
+
+    private boolean _isExpired(final PooledConnection pooledConnection, long now) {
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+        return idleTimeoutNanos > 0 && now - pooledConnection.getIdleSince() > idleTimeoutNanos;
+    }
+
+    private boolean _isValid(final PooledConnection pooledConnection, long now) {
+        long validationIdleNanos = TimeUnit.MILLISECONDS.toNanos(config.getValidationIdleMillis());
+        if (config.getValidationTimeoutSeconds() == 0
+                || now - pooledConnection.getIdleSince() <= validationIdleNanos) {
+            return true;
+        }
+        try {
+            return pooledConnection.getConnection().isValid(config.getValidationTimeoutSeconds());
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Undo per-borrow state so the next borrower gets a clean autocommit connection.
+     * @return false if the connection is broken and must be discarded.
+     */
+    private boolean _resetForReuse(final PooledConnection pooledConnection) {
+        Connection connection = pooledConnection.getConnection();
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private void _recordBorrowWait(long waitNanos) {
+        borrowCount.incrementAndGet();
+        totalBorrowWaitNanos.addAndGet(waitNanos);
+        maxBorrowWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /**
+     * Report connections held longer than the leak detection threshold.
+     * Each leak is reported once per borrow.
+     */
+    private void _detectLeaks(long now) {
+
+        long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.getLeakDetectionThresholdMillis());
+        if (thresholdNanos == 0) {
+            return;
+        }
+        for (PooledConnection pooledConnection : borrowedConnections) {
+            if (!pooledConnection.isLeakReported()
+                    && now - pooledConnection.getBorrowedAt() > thresholdNanos) {
+                pooledConnection.setLeakReported();
+                leaksDetected.incrementAndGet();
+                Thread borrower = pooledConnection.getBorrower();
+                System.err.printf("Warning: connection held for over %d ms by thread '%s', possible leak\n",
+                        config.getLeakDetectionThresholdMillis(),
+                        borrower == null ? "unknown" : borrower.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package carsharing.impementation;
+
+/**
+ * Point-in-time snapshot of ConnectionPool statistics.
+ */
+public class ConnectionPoolMetrics {
+
+    private final int activeCount;
+    private final int idleCount;
+    private final long borrowCount;
+    private final long totalBorrowWaitNanos;
+    private final long maxBorrowWaitNanos;
+    private final long borrowTimeouts;
+    private final long leaksDetected;
+    private final long createdCount;
+    private final long destroyedCount;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+
+    public ConnectionPoolMetrics(int activeCount, int idleCount, long borrowCount,
+                                 long totalBorrowWaitNanos, long maxBorrowWaitNanos,
+                                 long borrowTimeouts, long leaksDetected,
+                                 long createdCount, long destroyedCount,
+                                 long statementCacheHits, long statementCacheMisses) {
+        this.activeCount = activeCount;
+        this.idleCount = idleCount;
+        this.borrowCount = borrowCount;
+        this.totalBorrowWaitNanos = totalBorrowWaitNanos;
+        this.maxBorrowWaitNanos = maxBorrowWaitNanos;
+        this.borrowTimeouts = borrowTimeouts;
+        this.leaksDetected = leaksDetected;
+        this.createdCount = createdCount;
+        this.destroyedCount = destroyedCount;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getIdleCount() {
+        return idleCount;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount;
+    }
+
+    public long getTotalBorrowWaitNanos() {
+        return totalBorrowWaitNanos;
+    }
+
+    public long getMaxBorrowWaitNanos() {
+        return maxBorrowWaitNanos;
+    }
+
+    public double getAverageBorrowWaitNanos() {
+        return borrowCount == 0 ? 0.0 : (double) totalBorrowWaitNanos / borrowCount;
+    }
+
+    public long getBorrowTimeouts() {
+        return borrowTimeouts;
+    }
+
+    public long getLeaksDetected() {
+        return leaksDetected;
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "active=%d idle=%d borrows=%d avgWait=%.1fus maxWait=%.1fus " +
+                "timeouts=%d leaks=%d created=%d destroyed=%d " +
+                "stmtCacheHits=%d stmtCacheMisses=%d",
+                activeCount, idleCount, borrowCount,
+                getAverageBorrowWaitNanos() / 1_000.0, maxBorrowWaitNanos / 1_000.0,
+                borrowTimeouts, leaksDetected, createdCount, destroyedCount,
+                statementCacheHits, statementCacheMisses);
+    }
+}
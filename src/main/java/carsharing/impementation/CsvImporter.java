@@ -0,0 +1,209 @@
+package carsharing.impementation;
+
+import carsharing.interfaces.DatabaseInterface;
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.Customer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Streams a CSV file into a database through the bulk add methods.
+ * Only one batch per table is held in memory at a time, plus the ids of the companies by name.
+ * Each line is one of:
+ * <pre>
+ * company,&lt;name&gt;
+ * car,&lt;name&gt;,&lt;company name&gt;
+ * customer,&lt;name&gt;
+ * </pre>
+ * A car's company is either imported from the same file or already in the database;
+ * its id is only known once the company is stored, so cars are resolved when flushed.
+ * Blank lines and lines starting with '#' are skipped.
+ */
+public class CsvImporter {
+
+    private final static long reportIntervalNanos = 1_000_000_000L;
+
+    /**
+     * Car row waiting for the id of its company.
+     */
+    private static class CarRow {
+        final String name;
+        final String companyName;
+        final long lineNumber;
+
+        CarRow(final String name, final String companyName, long lineNumber) {
+            this.name = name;
+            this.companyName = companyName;
+            this.lineNumber = lineNumber;
+        }
+    }
+
+    private final DatabaseInterface database;
+    private final int batchSize;
+    private final PrintStream out;
+    private final List<Company> companies = new ArrayList<>();
+    private final List<CarRow> cars = new ArrayList<>();
+    private final List<Customer> customers = new ArrayList<>();
+    private final Map<String, Integer> companyIds = new HashMap<>();
+    private boolean storedCompaniesLoaded;
+    private long importedRows;
+
+    public CsvImporter(final DatabaseInterface database, int batchSize, final PrintStream out) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.database = Objects.requireNonNull(database);
+        this.batchSize = batchSize;
+        this.out = Objects.requireNonNull(out);
+    }
+
+    /**
+     * Import every row of csvFile, printing progress about once a second.
+     * @param csvFile File to import.
+     * @return Number of imported rows.
+     * @throws IOException If reading the file fails.
+     */
+    public long importFile(final Path csvFile) throws IOException {
+
+        long start = System.nanoTime();
+        long lastReport = start;
+        long lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ++lineNumber;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                _parseLine(line, lineNumber);
+                long now = System.nanoTime();
+                if (now - lastReport >= reportIntervalNanos) {
+                    _report(importedRows, now - start);
+                    lastReport = now;
+                }
+            }
+        }
+        _flushCompanies();
+        _flushCars();
+        _flushCustomers();
+        _report(importedRows, System.nanoTime() - start);
+        return importedRows;
+    }
+
+    // UTILITY METHODS --------------------------------------------------------
+
+    private void _parseLine(final String line, long lineNumber) {
+
+        int typeEnd = line.indexOf(',');
+        if (typeEnd < 0) {
+            throw new IllegalArgumentException(String.format("Line %d: missing fields", lineNumber));
+        }
+        String type = line.substring(0, typeEnd).trim();
+        String fields = line.substring(typeEnd + 1);
+        switch (type) {
+            case "company":
+                companies.add(new Company(0, _requireName(fields.trim(), lineNumber)));
+                if (companies.size() == batchSize) {
+                    _flushCompanies();
+                }
+                break;
+            case "car":
+                int nameEnd = fields.lastIndexOf(',');
+                if (nameEnd < 0) {
+                    throw new IllegalArgumentException(String.format("Line %d: missing company name", lineNumber));
+                }
+                cars.add(new CarRow(_requireName(fields.substring(0, nameEnd).trim(), lineNumber),
+                        _requireName(fields.substring(nameEnd + 1).trim(), lineNumber), lineNumber));
+                if (cars.size() == batchSize) {
+                    // Cars may reference companies that are still buffered.
+                    _flushCompanies();
+                    _flushCars();
+                }
+                break;
+            case "customer":
+                customers.add(new Customer(0, null, _requireName(fields.trim(), lineNumber)));
+                if (customers.size() == batchSize) {
+                    _flushCustomers();
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Line %d: unknown row type '%s'", lineNumber, type));
+        }
+    }
+
+    private static String _requireName(final String name, long lineNumber) {
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Line %d: name can't be empty", lineNumber));
+        }
+        return name;
+    }
+
+    private void _flushCompanies() {
+        if (!companies.isEmpty()) {
+            List<Integer> ids = database.addCompanies(companies);
+            for (int i = 0; i < ids.size(); ++i) {
+                companyIds.put(companies.get(i).getName(), ids.get(i));
+            }
+            importedRows += ids.size();
+            companies.clear();
+        }
+    }
+
+    /**
+     * Store the buffered cars. Their companies must have been flushed before.
+     */
+    private void _flushCars() {
+        if (!cars.isEmpty()) {
+            List<Car> resolvedCars = new ArrayList<>(cars.size());
+            for (CarRow car : cars) {
+                resolvedCars.add(new Car(0, _getCompanyId(car), car.name));
+            }
+            importedRows += database.addCars(resolvedCars).size();
+            cars.clear();
+        }
+    }
+
+    /**
+     * Returns the id of the company of a car row, loading the stored companies on the
+     * first name that wasn't imported from the file.
+     */
+    private int _getCompanyId(final CarRow car) {
+        Integer companyId = companyIds.get(car.companyName);
+        if (companyId == null && !storedCompaniesLoaded) {
+            for (Company company : database.getAllCompanies()) {
+                companyIds.putIfAbsent(company.getName(), company.getId());
+            }
+            storedCompaniesLoaded = true;
+            companyId = companyIds.get(car.companyName);
+        }
+        if (companyId == null) {
+            throw new IllegalArgumentException(String.format("Line %d: unknown company '%s'",
+                    car.lineNumber, car.companyName));
+        }
+        return companyId;
+    }
+
+    private void _flushCustomers() {
+        if (!customers.isEmpty()) {
+            importedRows += database.addCustomers(customers).size();
+            customers.clear();
+        }
+    }
+
+    private void _report(long rows, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("Imported %d rows in %.1f s (%.0f rows/s)\n",
+                rows, seconds, seconds == 0 ? 0.0 : rows / seconds);
+    }
+}
@@ -1,17 +1,26 @@
 package carsharing.impementation;
 
 import carsharing.interfaces.DatabaseInterface;
+import carsharing.interfaces.QueryListener;
+import carsharing.interfaces.RowMapper;
 import carsharing.valueobjects.Car;
 import carsharing.valueobjects.Company;
+import carsharing.valueobjects.CompanyStats;
 import carsharing.valueobjects.Customer;
+import carsharing.valueobjects.Page;
+import carsharing.valueobjects.PageCursor;
+import carsharing.valueobjects.Rental;
+import carsharing.valueobjects.Reservation;
 
 import java.io.File;
 import java.io.IOException;
 import java.sql.*;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
-
-import static carsharing.impementation.QueryType.*;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Class representing a Database.
@@ -22,28 +31,247 @@ public class Database implements DatabaseInterface {
     private final static String databaseDriver = "org.h2.Driver";
     private final static String dbUser = "";
     private final static String dbPassword = "";
+    private final static String insertCompanySql = "INSERT INTO COMPANY (NAME) VALUES (?)";
+    private final static String insertCarSql = "INSERT INTO CAR (NAME, COMPANY_ID) VALUES (?, ?)";
+    private final static String insertCustomerSql = "INSERT INTO CUSTOMER (NAME) VALUES (?)";
+    // Both swap the car only if the customer still holds the one read before, see _swapRentedCar.
+    private final static String rentCarSql = "UPDATE CUSTOMER SET RENTED_CAR_ID = ?, " +
+            "RENTED_SINCE = CURRENT_TIMESTAMP WHERE ID = ? AND COALESCE(RENTED_CAR_ID, 0) = ?";
+    // Not "RENTED_CAR_ID IS NULL": H2 would answer that from the RENTED_CAR_ID index
+    // and walk every customer without a car instead of seeking the primary key.
+    // The first booking of the car ending after now is the only one that can include now.
+    private final static String tryRentCarSql = "UPDATE CUSTOMER SET RENTED_CAR_ID = ?, " +
+            "RENTED_SINCE = CURRENT_TIMESTAMP WHERE ID = ? AND COALESCE(RENTED_CAR_ID, 0) = 0 " +
+            "AND NOT EXISTS (SELECT 1 FROM (SELECT START_TIME, CUSTOMER_ID FROM RESERVATION " +
+            "WHERE CAR_ID = ? AND END_TIME > CURRENT_TIMESTAMP ORDER BY CAR_ID, END_TIME LIMIT 1) BOOKING " +
+            "WHERE BOOKING.START_TIME <= CURRENT_TIMESTAMP AND BOOKING.CUSTOMER_ID <> ?)";
+    private final static String returnCarSql = "UPDATE CUSTOMER SET RENTED_CAR_ID = NULL, " +
+            "RENTED_SINCE = NULL WHERE ID = ? AND COALESCE(RENTED_CAR_ID, 0) = ?";
+    private final static String updateRentedCarSql =
+            "UPDATE CUSTOMER SET RENTED_CAR_ID = ?, RENTED_SINCE = ? WHERE ID = ?";
+    private final static String clearRentedCarSql = "UPDATE CUSTOMER SET RENTED_CAR_ID = NULL, " +
+            "RENTED_SINCE = NULL WHERE ID = ? AND COALESCE(RENTED_CAR_ID, 0) <> 0";
+    private final static String rentalColumns =
+            "RENTAL.ID, RENTAL.CUSTOMER_ID, RENTAL.CAR_ID, RENTAL.COMPANY_ID, RENTAL.START_TIME, RENTAL.END_TIME";
+    private final static String runningRentalColumns =
+            "0, CUSTOMER.ID, CAR.ID, CAR.COMPANY_ID, CUSTOMER.RENTED_SINCE, NULL";
+    private final static String insertRentalSql = "INSERT INTO RENTAL " +
+            "(CUSTOMER_ID, CAR_ID, COMPANY_ID, START_TIME, END_TIME) " +
+            "SELECT ?, CAR.ID, CAR.COMPANY_ID, ?, ? FROM CAR WHERE CAR.ID = ?";
+    // Ledger rows are split by LONG_RENTAL: a short rental ended within one period of its start, so
+    // only the rows started in the period before the window can reach into it.
+    private final static int rentalPeriodSeconds = 24 * 60 * 60;
+    private final static String periodStartSql = "DATEADD('SECOND', -" + rentalPeriodSeconds + ", ?)";
+    // RENTED_CAR_ID > 0 walks only the renting customers through the unique index.
+    private final static String selectCarRentalsSql =
+            "SELECT " + rentalColumns + " FROM RENTAL WHERE CAR_ID = ? AND LONG_RENTAL = FALSE " +
+            "AND START_TIME > " + periodStartSql + " AND START_TIME < ? AND END_TIME > ? " +
+            "UNION ALL SELECT " + rentalColumns + " FROM RENTAL WHERE CAR_ID = ? AND LONG_RENTAL = TRUE " +
+            "AND START_TIME < ? AND END_TIME > ? " +
+            "UNION ALL SELECT " + runningRentalColumns + " FROM CUSTOMER JOIN CAR ON CAR.ID = CUSTOMER.RENTED_CAR_ID " +
+            "WHERE CUSTOMER.RENTED_CAR_ID = ? AND CUSTOMER.RENTED_SINCE < ? ORDER BY 5";
+    private final static String selectActiveRentalsSql =
+            "SELECT " + rentalColumns + " FROM RENTAL WHERE LONG_RENTAL = FALSE " +
+            "AND START_TIME > " + periodStartSql + " AND START_TIME <= ? AND END_TIME > ? " +
+            "UNION ALL SELECT " + rentalColumns + " FROM RENTAL WHERE LONG_RENTAL = TRUE " +
+            "AND START_TIME <= ? AND END_TIME > ? " +
+            "UNION ALL SELECT " + runningRentalColumns + " FROM CUSTOMER JOIN CAR ON CAR.ID = CUSTOMER.RENTED_CAR_ID " +
+            "WHERE CUSTOMER.RENTED_CAR_ID > 0 AND CUSTOMER.RENTED_SINCE <= ? ORDER BY 5";
+    // Car id 0 when the customer rents nothing.
+    private final static String selectHeldCarSql = "SELECT 0, ID, COALESCE(RENTED_CAR_ID, 0), 0, " +
+            "COALESCE(RENTED_SINCE, CURRENT_TIMESTAMP), NULL FROM CUSTOMER WHERE ID = ?";
+    private final static String selectRunningRentalSql = "SELECT " + runningRentalColumns +
+            " FROM CUSTOMER JOIN CAR ON CAR.ID = CUSTOMER.RENTED_CAR_ID WHERE CUSTOMER.ID = ?";
+    private final static String companyColumns = "COMPANY.ID, COMPANY.NAME";
+    private final static String carColumns = "CAR.ID, CAR.COMPANY_ID, CAR.NAME";
+    private final static String customerColumns = "CUSTOMER.ID, CUSTOMER.RENTED_CAR_ID, CUSTOMER.NAME";
+    private final static String selectCompaniesSql = "SELECT " + companyColumns + " FROM COMPANY";
+    private final static String selectCarsSql = "SELECT " + carColumns + " FROM CAR";
+    private final static String selectCustomersSql = "SELECT " + customerColumns + " FROM CUSTOMER";
+    private final static String selectCompanyCarsSql =
+            "SELECT " + carColumns + " FROM CAR WHERE COMPANY_ID = ? ORDER BY ID";
+    private final static String selectAvailableCompanyCarsSql =
+            "SELECT " + carColumns + " FROM CAR WHERE COMPANY_ID = ? AND NOT EXISTS (" +
+            "SELECT 1 FROM CUSTOMER WHERE CUSTOMER.RENTED_CAR_ID = CAR.ID" +
+            ") ORDER BY ID";
+    private final static String selectCompanyStatsSql =
+            "SELECT COMPANY.ID, COMPANY.NAME, COUNT(CAR.ID), COUNT(CUSTOMER.ID) FROM COMPANY " +
+            "LEFT JOIN CAR ON CAR.COMPANY_ID = COMPANY.ID " +
+            "LEFT JOIN CUSTOMER ON CUSTOMER.RENTED_CAR_ID = CAR.ID " +
+            "WHERE COMPANY.ID = ? GROUP BY COMPANY.ID, COMPANY.NAME";
+    private final static String selectAllCompanyStatsSql =
+            "SELECT COMPANY.ID, COMPANY.NAME, COUNT(CAR.ID), COUNT(CUSTOMER.ID) FROM COMPANY " +
+            "LEFT JOIN CAR ON CAR.COMPANY_ID = COMPANY.ID " +
+            "LEFT JOIN CUSTOMER ON CUSTOMER.RENTED_CAR_ID = CAR.ID " +
+            "GROUP BY COMPANY.ID, COMPANY.NAME ORDER BY COMPANY.ID";
+    private final static String selectMaxCarIdSql = "SELECT COALESCE(MAX(ID), 0) FROM CAR";
+    private final static String selectMaxCustomerIdSql = "SELECT COALESCE(MAX(ID), 0) FROM CUSTOMER";
+    private final static String selectMaxRentalIdSql = "SELECT COALESCE(MAX(ID), 0) FROM RENTAL";
+    private final static String selectCarRangeStatsSql =
+            "SELECT COMPANY.ID, COMPANY.NAME, COUNT(CAR.ID), COUNT(CUSTOMER.ID) FROM CAR " +
+            "JOIN COMPANY ON COMPANY.ID = CAR.COMPANY_ID " +
+            "LEFT JOIN CUSTOMER ON CUSTOMER.RENTED_CAR_ID = CAR.ID " +
+            "WHERE CAR.ID BETWEEN ? AND ? GROUP BY COMPANY.ID, COMPANY.NAME";
+    private final static String selectCustomerRangeCountsSql =
+            "SELECT COUNT(*), COUNT(RENTED_CAR_ID) FROM CUSTOMER WHERE ID BETWEEN ? AND ?";
+    private final static String selectRentalRangeTotalsSql =
+            "SELECT COMPANY_ID, COUNT(*), SUM(DATEDIFF('SECOND', START_TIME, END_TIME)) FROM RENTAL " +
+            "WHERE ID BETWEEN ? AND ? GROUP BY COMPANY_ID";
+    private final static String selectCarByIdSql = "SELECT " + carColumns + " FROM CAR WHERE ID = ?";
+    private final static String selectCustomerByIdSql =
+            "SELECT " + customerColumns + " FROM CUSTOMER WHERE ID = ?";
+    private final static String selectCompanyByIdSql =
+            "SELECT " + companyColumns + " FROM COMPANY WHERE ID = ?";
+    private final static String selectCarsByIdsSql =
+            "SELECT " + carColumns + " FROM CAR WHERE ID = ANY(?)";
+    private final static String selectCompaniesByIdsSql =
+            "SELECT " + companyColumns + " FROM COMPANY WHERE ID = ANY(?)";
+    private final static String selectCompaniesAfterSql =
+            "SELECT " + companyColumns + " FROM COMPANY WHERE ID > ? ORDER BY ID LIMIT ?";
+    private final static String selectCompaniesBeforeSql =
+            "SELECT " + companyColumns + " FROM COMPANY WHERE ID < ? ORDER BY ID DESC LIMIT ?";
+    private final static String selectCarsAfterSql =
+            "SELECT " + carColumns + " FROM CAR WHERE ID > ? ORDER BY ID LIMIT ?";
+    private final static String selectCarsBeforeSql =
+            "SELECT " + carColumns + " FROM CAR WHERE ID < ? ORDER BY ID DESC LIMIT ?";
+    private final static String selectCompanyCarsAfterSql =
+            "SELECT " + carColumns + " FROM CAR WHERE COMPANY_ID = ? AND ID > ? ORDER BY ID LIMIT ?";
+    private final static String selectCompanyCarsBeforeSql =
+            "SELECT " + carColumns + " FROM CAR WHERE COMPANY_ID = ? AND ID < ? ORDER BY ID DESC LIMIT ?";
+    private final static String selectCustomersAfterSql =
+            "SELECT " + customerColumns + " FROM CUSTOMER WHERE ID > ? ORDER BY ID LIMIT ?";
+    private final static String selectCustomersBeforeSql =
+            "SELECT " + customerColumns + " FROM CUSTOMER WHERE ID < ? ORDER BY ID DESC LIMIT ?";
+    // Range over the UNIQUE index on NAME, which also yields the rows in name order.
+    private final static String selectCustomersByNameSql =
+            "SELECT " + customerColumns + " FROM CUSTOMER WHERE NAME >= ? AND NAME < ? ORDER BY NAME LIMIT ?";
+    private final static String selectCustomersFromNameSql =
+            "SELECT " + customerColumns + " FROM CUSTOMER WHERE NAME >= ? ORDER BY NAME LIMIT ?";
+    private final static RowMapper<Company> companyMapper = resultSet -> new Company(
+            resultSet.getInt(1),
+            resultSet.getString(2));
+    private final static RowMapper<Car> carMapper = resultSet -> new Car(
+            resultSet.getInt(1),
+            resultSet.getInt(2),
+            resultSet.getString(3));
+    private final static RowMapper<Customer> customerMapper = resultSet -> {
+        int id = resultSet.getInt(1);
+        int rentedCarId = resultSet.getInt(2);
+        return new Customer(
+                id,
+                resultSet.wasNull() ? null : rentedCarId,
+                resultSet.getString(3));
+    };
+    private final static RowMapper<CompanyStats> companyStatsMapper = resultSet -> new CompanyStats(
+            resultSet.getInt(1),
+            resultSet.getString(2),
+            resultSet.getInt(3),
+            resultSet.getInt(4));
+    private final static RowMapper<Rental> rentalMapper = resultSet -> {
+        Timestamp end = resultSet.getTimestamp(6);
+        return new Rental(
+                resultSet.getLong(1),
+                resultSet.getInt(2),
+                resultSet.getInt(3),
+                resultSet.getInt(4),
+                resultSet.getTimestamp(5).toInstant(),
+                end == null ? null : end.toInstant());
+    };
+    private final static String reservationColumns = "RESERVATION.ID, RESERVATION.CUSTOMER_ID, " +
+            "RESERVATION.CAR_ID, RESERVATION.START_TIME, RESERVATION.END_TIME";
+    private final static String lockCarSql = "SELECT ID FROM CAR WHERE ID = ? FOR UPDATE";
+    // Bookings of a car never overlap, so the first one ending after a new booking starts
+    // is the only one that can collide with it: one seek on (CAR_ID, END_TIME). CAR_ID must be
+    // in the ORDER BY, or H2 sorts every later booking of the car instead of reading the index in order.
+    private final static String selectNextReservationStartSql = "SELECT START_TIME FROM RESERVATION " +
+            "WHERE CAR_ID = ? AND END_TIME > ? ORDER BY CAR_ID, END_TIME LIMIT 1";
+    private final static String selectReservationAtSql = "SELECT " + reservationColumns +
+            " FROM RESERVATION WHERE CAR_ID = ? AND END_TIME > ? ORDER BY CAR_ID, END_TIME LIMIT 1";
+    private final static String selectCarRenterSql = "SELECT ID FROM CUSTOMER WHERE RENTED_CAR_ID = ?";
+    private final static String insertReservationSql =
+            "INSERT INTO RESERVATION (CUSTOMER_ID, CAR_ID, START_TIME, END_TIME) VALUES (?, ?, ?, ?)";
+    private final static String deleteReservationSql = "DELETE FROM RESERVATION WHERE ID = ?";
+    private final static String selectCustomerReservationsSql = "SELECT " + reservationColumns +
+            " FROM RESERVATION WHERE CUSTOMER_ID = ? ORDER BY START_TIME";
+    private final static String selectUpcomingReservationsSql = "SELECT " + reservationColumns +
+            " FROM RESERVATION WHERE END_TIME > ? ORDER BY CAR_ID, START_TIME";
+    // The last parameter is true to ignore running rentals, for periods not including now.
+    private final static String selectFreeCompanyCarsSql = "SELECT " + carColumns + " FROM CAR " +
+            "WHERE COMPANY_ID = ? AND NOT EXISTS (SELECT 1 FROM RESERVATION WHERE CAR_ID = CAR.ID " +
+            "AND END_TIME > ? AND START_TIME < ?) " +
+            "AND (? OR NOT EXISTS (SELECT 1 FROM CUSTOMER WHERE CUSTOMER.RENTED_CAR_ID = CAR.ID)) ORDER BY CAR.ID";
+    private final static RowMapper<Reservation> reservationMapper = resultSet -> new Reservation(
+            resultSet.getLong(1),
+            resultSet.getInt(2),
+            resultSet.getInt(3),
+            resultSet.getTimestamp(4).toInstant(),
+            resultSet.getTimestamp(5).toInstant());
+    private final static String lazyQueryExecutionOnSql = "SET LAZY_QUERY_EXECUTION TRUE";
+    private final static String lazyQueryExecutionOffSql = "SET LAZY_QUERY_EXECUTION FALSE";
+    private final static String uniqueViolationState = "23505";
+    private final static int concurrentUpdateErrorCode = 90131;
+    private final static int defaultExpectedRows = 64;
+    private final static String batchMarker = "/* batch */ ";
+    private final static String transactionMarker = "/* transaction */ ";
+    private final static Object[] noParams = new Object[0];
+    private final static String explainPrefix = "EXPLAIN ";
+    private final static String explainAnalyzePrefix = "EXPLAIN ANALYZE ";
+    private final static String databaseFileSuffix = ".mv.db";
+    private final static String selectSettingsSql = "SELECT NAME, VALUE FROM INFORMATION_SCHEMA.SETTINGS";
+    private final static String selectReadOnlySql = "SELECT READONLY()";
+    private final static String countTablesSql = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES " +
+            "WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME IN ('COMPANY', 'CAR', 'CUSTOMER')";
+    private final static String shutdownSql = "SHUTDOWN";
+    private final DatabaseConfig config;
+    private File databaseFile;
     private String connectionUrl;
+    private ConnectionPool connectionPool;
+    private SlowQueryLog slowQueryLog;
+    // Opened by the slow-query log writer on first use, so its plans never wait for pooled connections.
+    private Connection explainConnection;
+    // Listener set by the caller combined with the slow-query log, null when neither is on.
+    private volatile QueryListener queryListener;
+
+    // Register database driver once for all pools.
+    static {
+        try {
+            Class.forName(databaseDriver);
+        }
+        catch(ClassNotFoundException ex) {
+            System.err.printf("Error: unable to load %s driver class", databaseDriver);
+            System.exit(1);
+        }
+    }
 
     public Database(final String databaseFilePath) {
+        this(databaseFilePath, new DatabaseConfig());
+    }
+
+    public Database(final String databaseFilePath, final DatabaseConfig config) {
+        this.config = Objects.requireNonNull(config);
         try {
             _initDatabase(Objects.requireNonNull(databaseFilePath));
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
+        if (config.getSlowQueryThresholdMillis() > 0) {
+            slowQueryLog = new SlowQueryLog(config, this::_explain);
+            queryListener = slowQueryLog;
+        }
     }
 
     /**
      * Add specified company to database.
-     * @param company Company to add.
+     * @param company Company to add, its id is ignored.
+     * @return Persisted Company with the generated id.
      */
     @Override
-    public void addCompany(final Company company) {
+    public Company addCompany(final Company company) {
 
-        String sqlQuery = String.format(
-                "INSERT INTO COMPANY (NAME) VALUES ('%s'); ",
-                Objects.requireNonNull(company).getName());
         try {
-            _runQuery(UPDATE_QUERY, sqlQuery);
+            int id = _runInsert(insertCompanySql,
+                    Objects.requireNonNull(company).getName());
+            return new Company(id, company.getName());
         } catch (SQLException ex) {
             throw new RuntimeException(ex);
         }
@@ -51,17 +279,17 @@ public class Database implements DatabaseInterface {
 
     /**
      * Add specified car to database.
-     * @param car Car to add.
+     * @param car Car to add, its id is ignored.
+     * @return Persisted Car with the generated id.
      */
     @Override
-    public void addCar(final Car car) {
+    public Car addCar(final Car car) {
 
-        String sqlQuery = String.format(
-                "INSERT INTO CAR (NAME, COMPANY_ID) VALUES ('%s', %d); ",
-                Objects.requireNonNull(car).getName(),
-                car.getCompanyId());
         try {
-            _runQuery(UPDATE_QUERY, sqlQuery);
+            int id = _runInsert(insertCarSql,
+                    Objects.requireNonNull(car).getName(),
+                    car.getCompanyId());
+            return new Car(id, car.getCompanyId(), car.getName());
         } catch (SQLException ex) {
             throw new RuntimeException(ex);
         }
@@ -69,57 +297,202 @@ public class Database implements DatabaseInterface {
 
     /**
      * Add specified customer to database.
-     * @param customer Customer to add.
+     * @param customer Customer to add, its id and rented car are ignored.
+     * @return Persisted Customer with the generated id.
      */
     @Override
-    public void addCustomer(final Customer customer) {
+    public Customer addCustomer(final Customer customer) {
 
-        String sqlQuery = String.format(
-                "INSERT INTO CUSTOMER (NAME) VALUES ('%s'); ",
-                Objects.requireNonNull(customer).getName());
         try {
-            _runQuery(UPDATE_QUERY, sqlQuery);
+            int id = _runInsert(insertCustomerSql,
+                    Objects.requireNonNull(customer).getName());
+            return new Customer(id, null, customer.getName());
         } catch (SQLException ex) {
             throw new RuntimeException(ex);
         }
     }
 
+    /**
+     * Add companies in JDBC batches inside one transaction.
+     * @param companies Companies to add.
+     * @return Generated ids in insertion order.
+     */
+    @Override
+    public List<Integer> addCompanies(final Iterable<Company> companies) {
+        return _runBatchInsert(insertCompanySql, Objects.requireNonNull(companies),
+                (preparedStatement, company) -> preparedStatement.setString(1, company.getName()));
+    }
+
+    /**
+     * Add cars in JDBC batches inside one transaction.
+     * @param cars Cars to add.
+     * @return Generated ids in insertion order.
+     */
+    @Override
+    public List<Integer> addCars(final Iterable<Car> cars) {
+        return _runBatchInsert(insertCarSql, Objects.requireNonNull(cars),
+                (preparedStatement, car) -> {
+                    preparedStatement.setString(1, car.getName());
+                    preparedStatement.setInt(2, car.getCompanyId());
+                });
+    }
+
+    /**
+     * Add customers in JDBC batches inside one transaction.
+     * @param customers Customers to add.
+     * @return Generated ids in insertion order.
+     */
+    @Override
+    public List<Integer> addCustomers(final Iterable<Customer> customers) {
+        return _runBatchInsert(insertCustomerSql, Objects.requireNonNull(customers),
+                (preparedStatement, customer) -> preparedStatement.setString(1, customer.getName()));
+    }
+
     /**
      * Update database to reflect changes.
+     * A car the customer was still renting is written to the rental ledger in the same transaction.
      * @param car Car to rent.
      * @param customer Customer to update.
+     * @return Id of the car the customer held before, read under a row lock, or null.
      */
     @Override
-    public void rentCarToCustomer(final Car car, final Customer customer) {
+    public Integer rentCarToCustomer(final Car car, final Customer customer) {
 
-        String sqlQuery = String.format(
-                "UPDATE CUSTOMER SET RENTED_CAR_ID = %d WHERE ID = %d; ",
-                Objects.requireNonNull(car).getId(),
-                Objects.requireNonNull(customer).getId());
+        int carId = Objects.requireNonNull(car).getId();
+        int customerId = Objects.requireNonNull(customer).getId();
+        Integer[] releasedCarId = new Integer[1];
+        try {
+            _runTransaction(transactionMarker + rentCarSql, new Object[] {carId, customerId}, connection -> {
+                releasedCarId[0] = _swapRentedCar(connection, customerId, carId);
+                return 1;
+            });
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+        return releasedCarId[0];
+    }
+
+    /**
+     * Atomically rent a car to a customer if neither is taken and nobody else booked the car for now.
+     * Relies on a conditional update plus the unique index on CUSTOMER.RENTED_CAR_ID,
+     * so concurrent renters of the same car can't both succeed and no table lock is taken.
+     * The car row is locked first, as reserveCar does, so a booking for now and this rental
+     * are checked one after the other and can't both commit.
+     * @param car Car to rent.
+     * @param customer Customer renting the car.
+     * @return true if the car was rented, false if the car or the customer was already taken.
+     */
+    @Override
+    public boolean tryRent(final Car car, final Customer customer) {
+
+        int carId = Objects.requireNonNull(car).getId();
+        int customerId = Objects.requireNonNull(customer).getId();
+        Object[] params = {carId, customerId, carId, customerId};
         try {
-            _runQuery(UPDATE_QUERY, sqlQuery);
+            return _runTransaction(transactionMarker + tryRentCarSql, params, connection -> {
+                _executeQuery(connection, lockCarSql, resultSet -> resultSet.getInt(1), carId);
+                return _executeUpdate(connection, tryRentCarSql, params);
+            }) == 1;
         } catch (SQLException ex) {
+            if (uniqueViolationState.equals(ex.getSQLState())
+                    || ex.getErrorCode() == concurrentUpdateErrorCode) {
+                return false;
+            }
             throw new RuntimeException(ex);
         }
     }
 
     /**
      * Update database to reflect changes.
+     * The finished rental is appended to the rental ledger in the same transaction.
      * @param customer Customer to update.
+     * @return Id of the car the customer held, read under a row lock, or null if it held none.
      */
     @Override
-    public void returnRentedCar(final Customer customer) {
+    public Integer returnRentedCar(final Customer customer) {
 
-        String sqlQuery = String.format(
-                "UPDATE CUSTOMER SET RENTED_CAR_ID = NULL WHERE ID = %d; ",
-                customer.getId());
+        int customerId = Objects.requireNonNull(customer).getId();
+        Integer[] releasedCarId = new Integer[1];
         try {
-            _runQuery(UPDATE_QUERY, sqlQuery);
+            _runTransaction(transactionMarker + returnCarSql, new Object[] {customerId}, connection -> {
+                releasedCarId[0] = _swapRentedCar(connection, customerId, null);
+                return releasedCarId[0] == null ? 0 : 1;
+            });
         } catch (SQLException ex) {
             throw new RuntimeException(ex);
         }
+        return releasedCarId[0];
     }
 
+    /**
+     * Apply many rentals and returns in one transaction, sent as JDBC batches.
+     * Every listed customer still holding a car is cleared before the rentals are written,
+     * so cars handed from one customer to another within the same call never trip
+     * the unique index on RENTED_CAR_ID.
+     * @param runningRentals Customer id to the rental it now runs, or to null if it rents no car;
+     *                       the start of the rental is stored as RENTED_SINCE.
+     * @param finishedRentals Rentals to append to the ledger, with their end set;
+     *                        the company is taken from the car.
+     */
+    public void updateRentedCars(final Map<Integer, Rental> runningRentals, final List<Rental> finishedRentals) {
+
+        if (Objects.requireNonNull(runningRentals).isEmpty() && Objects.requireNonNull(finishedRentals).isEmpty()) {
+            return;
+        }
+        try {
+            _runTransaction(batchMarker + updateRentedCarSql, noParams, connection -> {
+                _runUpdateBatches(connection.prepareStatement(insertRentalSql), finishedRentals,
+                        (preparedStatement, rental) -> {
+                            preparedStatement.setInt(1, rental.getCustomerId());
+                            preparedStatement.setTimestamp(2, Timestamp.from(rental.getStart()));
+                            preparedStatement.setTimestamp(3, Timestamp.from(Objects.requireNonNull(rental.getEnd())));
+                            preparedStatement.setInt(4, rental.getCarId());
+                        });
+                _runUpdateBatches(connection.prepareStatement(clearRentedCarSql), runningRentals.keySet(),
+                        (preparedStatement, customerId) -> preparedStatement.setInt(1, customerId));
+                List<Rental> rentals = new ArrayList<>();
+                for (Rental rental : runningRentals.values()) {
+                    if (rental != null) {
+                        rentals.add(rental);
+                    }
+                }
+                _runUpdateBatches(connection.prepareStatement(updateRentedCarSql), rentals,
+                        (preparedStatement, rental) -> {
+                            preparedStatement.setInt(1, rental.getCarId());
+                            preparedStatement.setTimestamp(2, Timestamp.from(rental.getStart()));
+                            preparedStatement.setInt(3, rental.getCustomerId());
+                        });
+                return runningRentals.size() + finishedRentals.size();
+            });
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Apply many rentals and returns in one transaction without touching the rental ledger.
+     * New rentals start at the time of the call.
+     * @param rentedCarIds Customer id to the car id it now rents, or to null if it rents none.
+     */
+    public void updateRentedCars(final Map<Integer, Integer> rentedCarIds) {
+        Instant now = Instant.now();
+        Map<Integer, Rental> runningRentals = new HashMap<>();
+        rentedCarIds.forEach((customerId, carId) -> runningRentals.put(customerId,
+                carId == null ? null : new Rental(0, customerId, carId, 0, now, null)));
+        updateRentedCars(runningRentals, List.of());
+    }
+
+    /**
+     * Returns the rental a customer is running according to the database.
+     * @param customerId Customer id.
+     * @return Rental with id 0, or null if the customer rents no car.
+     */
+    Rental getRunningRental(int customerId) {
+        List<Rental> rentals = _query(selectRunningRentalSql, rentalMapper, 1, customerId);
+        return rentals.isEmpty() ? null : rentals.get(0);
+    }
+
+
     /**
      * Returns a Car object by id.
      * @param id Car id to search for.
@@ -127,8 +500,7 @@ public class Database implements DatabaseInterface {
      */
     @Override
     public Car getCarById(final Integer id) {
-        return getAllCars().stream()
-                .filter(car -> car.getId() == id)
+        return _query(selectCarByIdSql, carMapper, 1, Objects.requireNonNull(id)).stream()
                 .findFirst()
                 .orElse(new Car(-1, -1, "null"));
     }
@@ -140,35 +512,60 @@ public class Database implements DatabaseInterface {
      */
     @Override
     public Company getCompanyById(final Integer companyId) {
-        return getAllCompanies().stream()
-                .filter(company -> company.getId() == companyId)
+        return _query(selectCompanyByIdSql, companyMapper, 1, Objects.requireNonNull(companyId)).stream()
                 .findFirst()
                 .orElse(new Company(-1, "null"));
     }
 
     /**
-     * Returns a List of Company objects stored in database.
-     * @return List<Company>
+     * Returns a Customer object by id.
+     * @param customerId Customer id to search for.
+     * @return Customer object or null Customer object.
      */
     @Override
-    public List<Company> getAllCompanies() {
+    public Customer getCustomerById(final Integer customerId) {
+        return _query(selectCustomerByIdSql, customerMapper, 1, Objects.requireNonNull(customerId)).stream()
+                .findFirst()
+                .orElse(new Customer(-1, null, "null"));
+    }
 
-        String sqlQuery = "SELECT * FROM COMPANY; ";
-        List<Map<String, Object>> results;
-        try {
-            results = _runQuery(EXECUTE_QUERY, sqlQuery);
-        } catch (SQLException ex) {
-            throw new RuntimeException(ex);
+    /**
+     * Returns Car objects with the specified ids, fetched in one query.
+     * Unknown ids are skipped.
+     * @param ids Car ids to search for.
+     * @return List<Car>
+     */
+    @Override
+    public List<Car> getCarsByIds(final Collection<Integer> ids) {
+        if (Objects.requireNonNull(ids).isEmpty()) {
+            return new ArrayList<>();
         }
-        List<Company> companyList = new LinkedList<>();
-        for (Map<String, Object> row : results) {
-            Company company = new Company(
-                    (Integer) row.get("ID"),
-                    (String) row.get("NAME")
-            );
-            companyList.add(company);
+        Object[] distinctIds = new LinkedHashSet<>(ids).toArray();
+        return _query(selectCarsByIdsSql, carMapper, distinctIds.length, (Object) distinctIds);
+    }
+
+    /**
+     * Returns Company objects with the specified ids, fetched in one query.
+     * Unknown ids are skipped.
+     * @param companyIds Company ids to search for.
+     * @return List<Company>
+     */
+    @Override
+    public List<Company> getCompaniesByIds(final Collection<Integer> companyIds) {
+        if (Objects.requireNonNull(companyIds).isEmpty()) {
+            return new ArrayList<>();
         }
-        return companyList;
+        Object[] distinctIds = new LinkedHashSet<>(companyIds).toArray();
+        return _query(selectCompaniesByIdsSql, companyMapper, distinctIds.length, (Object) distinctIds);
+    }
+
+    /**
+     * Returns a List of Company objects stored in database.
+     * @return List<Company>
+     */
+    @Override
+    public List<Company> getAllCompanies() {
+        return _query(selectCompaniesSql, companyMapper, defaultExpectedRows);
     }
 
     /**
@@ -177,24 +574,7 @@ public class Database implements DatabaseInterface {
      */
     @Override
     public List<Car> getAllCars() {
-
-        String sqlQuery = "SELECT * FROM CAR ";
-        List<Map<String, Object>> results;
-        try {
-            results = _runQuery(EXECUTE_QUERY, sqlQuery);
-        } catch (SQLException ex) {
-            throw new RuntimeException(ex);
-        }
-        List<Car> carList = new LinkedList<>();
-        for (Map<String, Object> row : results) {
-            Car car = new Car(
-                    (Integer) row.get("ID"),
-                    (Integer) row.get("COMPANY_ID"),
-                    (String) row.get("NAME")
-            );
-            carList.add(car);
-        }
-        return carList;
+        return _query(selectCarsSql, carMapper, defaultExpectedRows);
     }
 
     /**
@@ -204,10 +584,8 @@ public class Database implements DatabaseInterface {
      */
     @Override
     public List<Car> getCompanyCars(final Company company) {
-
-        return getAllCars().stream()
-                .filter(car -> car.getCompanyId() == company.getId())
-                .collect(Collectors.toList());
+        return _query(selectCompanyCarsSql, carMapper, defaultExpectedRows,
+                Objects.requireNonNull(company).getId());
     }
 
     /**
@@ -217,13 +595,30 @@ public class Database implements DatabaseInterface {
      */
     @Override
     public List<Car> getAvailableCompanyCars(final Company company) {
+        return _query(selectAvailableCompanyCarsSql, carMapper, defaultExpectedRows,
+                Objects.requireNonNull(company).getId());
+    }
 
-        final List<Customer> customers = getAllCustomers();
-        return getCompanyCars(Objects.requireNonNull(company)).stream()
-                .filter(car -> customers.stream()
-                        .noneMatch(customer -> customer.getRentedCarId() != null &&
-                                customer.getRentedCarId() == car.getId()))
-                .collect(Collectors.toList());
+    /**
+     * Counts the cars of a company and how many of them are rented.
+     * Walks the company's cars, CachingDatabase answers from counters instead.
+     * @param company Company object.
+     * @return CompanyStats, all zero for an unknown company.
+     */
+    @Override
+    public CompanyStats getCompanyStats(final Company company) {
+        List<CompanyStats> stats = _query(selectCompanyStatsSql, companyStatsMapper, 1,
+                Objects.requireNonNull(company).getId());
+        return stats.isEmpty() ? new CompanyStats(company.getId(), company.getName(), 0, 0) : stats.get(0);
+    }
+
+    /**
+     * Returns the fleet counts of every company, ordered by company id.
+     * @return List<CompanyStats>
+     */
+    @Override
+    public List<CompanyStats> getAllCompanyStats() {
+        return _query(selectAllCompanyStatsSql, companyStatsMapper, defaultExpectedRows);
     }
 
     /**
@@ -232,28 +627,406 @@ public class Database implements DatabaseInterface {
      */
     @Override
     public List<Customer> getAllCustomers() {
+        return _query(selectCustomersSql, customerMapper, defaultExpectedRows);
+    }
+
+    /**
+     * Returns one page of companies ordered by id.
+     * @param cursor Position of the page.
+     * @param pageSize Maximum number of companies on the page.
+     * @return Page<Company>
+     */
+    @Override
+    public Page<Company> getCompanies(final PageCursor cursor, int pageSize) {
+        return _queryPage(selectCompaniesAfterSql, selectCompaniesBeforeSql,
+                companyMapper, Company::getId, cursor, pageSize);
+    }
+
+    /**
+     * Returns one page of cars ordered by id.
+     * @param cursor Position of the page.
+     * @param pageSize Maximum number of cars on the page.
+     * @return Page<Car>
+     */
+    @Override
+    public Page<Car> getCars(final PageCursor cursor, int pageSize) {
+        return _queryPage(selectCarsAfterSql, selectCarsBeforeSql,
+                carMapper, Car::getId, cursor, pageSize);
+    }
+
+    /**
+     * Returns one page of the company's cars ordered by id.
+     * @param company Company object.
+     * @param cursor Position of the page.
+     * @param pageSize Maximum number of cars on the page.
+     * @return Page<Car>
+     */
+    @Override
+    public Page<Car> getCompanyCars(final Company company, final PageCursor cursor, int pageSize) {
+        return _queryPage(selectCompanyCarsAfterSql, selectCompanyCarsBeforeSql,
+                carMapper, Car::getId, cursor, pageSize, Objects.requireNonNull(company).getId());
+    }
+
+    /**
+     * Returns one page of customers ordered by id.
+     * @param cursor Position of the page.
+     * @param pageSize Maximum number of customers on the page.
+     * @return Page<Customer>
+     */
+    @Override
+    public Page<Customer> getCustomers(final PageCursor cursor, int pageSize) {
+        return _queryPage(selectCustomersAfterSql, selectCustomersBeforeSql,
+                customerMapper, Customer::getId, cursor, pageSize);
+    }
+
+    /**
+     * Returns customers whose name starts with namePrefix, ordered by name.
+     * @param namePrefix Case-sensitive start of the name, empty matches every customer.
+     * @param limit Maximum number of customers returned.
+     * @return List<Customer>
+     */
+    @Override
+    public List<Customer> findCustomers(final String namePrefix, int limit) {
+
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        String upperBound = _prefixUpperBound(Objects.requireNonNull(namePrefix));
+        if (upperBound == null) {
+            List<Customer> customers = _query(selectCustomersFromNameSql, customerMapper, limit,
+                    namePrefix, limit);
+            customers.removeIf(customer -> !customer.getName().startsWith(namePrefix));
+            return customers;
+        }
+        return _query(selectCustomersByNameSql, customerMapper, limit, namePrefix, upperBound, limit);
+    }
+
+    /**
+     * Returns the rentals of a car overlapping a time window, ordered by start.
+     * Served from the (CAR_ID, LONG_RENTAL, START_TIME) ledger index, plus the car's running rental.
+     * @param car Rented car.
+     * @param from Start of the window, inclusive.
+     * @param to End of the window, exclusive.
+     * @return List<Rental>
+     */
+    @Override
+    public List<Rental> getCarRentals(final Car car, final Instant from, final Instant to) {
+
+        if (!Objects.requireNonNull(from).isBefore(Objects.requireNonNull(to))) {
+            throw new IllegalArgumentException("Empty time window: " + from + " to " + to);
+        }
+        int carId = Objects.requireNonNull(car).getId();
+        Timestamp fromTime = Timestamp.from(from);
+        Timestamp toTime = Timestamp.from(to);
+        return _query(selectCarRentalsSql, rentalMapper, defaultExpectedRows,
+                carId, fromTime, toTime, fromTime, carId, toTime, fromTime, carId, toTime);
+    }
+
+    /**
+     * Returns the rentals running at a point in time, ordered by start.
+     * Finished ones are read from the last period before the time, plus the long rentals.
+     * @param at Point in time.
+     * @return List<Rental>
+     */
+    @Override
+    public List<Rental> getActiveRentals(final Instant at) {
+        Timestamp time = Timestamp.from(Objects.requireNonNull(at));
+        return _query(selectActiveRentalsSql, rentalMapper, defaultExpectedRows,
+                time, time, time, time, time, time);
+    }
+
+    /**
+     * Book a car over [start, end) unless another booking of it overlaps that period.
+     * The car row is locked for the transaction, so bookings of one car are checked one at a time.
+     * A period including now is refused while another customer rents the car.
+     * @param car Car to book.
+     * @param customer Customer booking the car, who may hold any number of bookings.
+     * @param start Start of the booking, inclusive.
+     * @param end End of the booking, exclusive.
+     * @return Persisted Reservation with the stored start and end, see toStoredTime,
+     *         or one with id -1 if the car is booked in that period.
+     */
+    @Override
+    public Reservation reserveCar(final Car car, final Customer customer, final Instant start, final Instant end) {
+        return _reserveCar(car, customer, toStoredTime(start), toStoredTime(end));
+    }
+
+    /**
+     * Returns a point in time at the precision of the TIMESTAMP columns. H2 keeps microseconds
+     * and rounds the rest, which could move a booking's end past the start of the next one;
+     * truncating once before binding lets the tables, the ReservationIndex and the returned
+     * Reservation compare the same instants.
+     * @param time Point in time.
+     * @return time truncated to microseconds.
+     */
+    static Instant toStoredTime(final Instant time) {
+        return Objects.requireNonNull(time).truncatedTo(ChronoUnit.MICROS);
+    }
+
+    /**
+     * Delete a booking.
+     * @param reservation Booking to cancel.
+     * @return false if there was no such booking.
+     */
+    @Override
+    public boolean cancelReservation(final Reservation reservation) {
 
-        String sqlQuery = "SELECT * FROM CUSTOMER; ";
-        List<Map<String, Object>> results;
         try {
-            results = _runQuery(EXECUTE_QUERY, sqlQuery);
+            return _runUpdate(deleteReservationSql, Objects.requireNonNull(reservation).getId()) == 1;
         } catch (SQLException ex) {
             throw new RuntimeException(ex);
         }
-        List<Customer> customerList = new LinkedList<>();
-        for (Map<String, Object> row : results) {
-            Customer customer = new Customer(
-                    (Integer) row.get("ID"),
-                    (Integer) row.get("RENTED_CAR_ID"),
-                    (String) row.get("NAME")
-            );
-            customerList.add(customer);
+    }
+
+    /**
+     * Returns every booking of a customer, past ones included, ordered by start.
+     * @param customer Customer object.
+     * @return List<Reservation>
+     */
+    @Override
+    public List<Reservation> getCustomerReservations(final Customer customer) {
+        return _query(selectCustomerReservationsSql, reservationMapper, defaultExpectedRows,
+                Objects.requireNonNull(customer).getId());
+    }
+
+    /**
+     * Returns the bookings that end after a point in time, ordered by car and start.
+     * @param after Point in time, usually now.
+     * @return List<Reservation>
+     */
+    @Override
+    public List<Reservation> getUpcomingReservations(final Instant after) {
+        return _query(selectUpcomingReservationsSql, reservationMapper, defaultExpectedRows,
+                Timestamp.from(Objects.requireNonNull(after)));
+    }
+
+    /**
+     * Returns the cars of a company with no booking overlapping [from, to), ordered by id.
+     * For a period including now, rented cars are left out too.
+     * Each car costs one seek on the (CAR_ID, END_TIME) booking index.
+     * @param company Company object.
+     * @param from Start of the period, inclusive.
+     * @param to End of the period, exclusive.
+     * @return List<Car>
+     */
+    @Override
+    public List<Car> getFreeCompanyCars(final Company company, final Instant from, final Instant to) {
+        return _getFreeCompanyCars(company, from, to, !ReservationIndex.coversNow(from, to));
+    }
+
+    /**
+     * Returns the cars of a company with no booking overlapping [from, to), rented or not.
+     * For callers that keep running rentals themselves.
+     * @return List<Car>
+     */
+    List<Car> getUnbookedCompanyCars(final Company company, final Instant from, final Instant to) {
+        return _getFreeCompanyCars(company, from, to, true);
+    }
+
+    /**
+     * Returns the booking of a car that includes a point in time.
+     * @param carId Car id.
+     * @param at Point in time.
+     * @return Reservation, or null if the car is not booked at that time.
+     */
+    Reservation getReservationAt(int carId, final Instant at) {
+        List<Reservation> reservations = _query(selectReservationAtSql, reservationMapper, 1,
+                carId, Timestamp.from(Objects.requireNonNull(at)));
+        return reservations.isEmpty() || reservations.get(0).getStart().isAfter(at) ? null : reservations.get(0);
+    }
+
+    /**
+     * Returns a lazily fetched Stream over every company.
+     * The stream holds a pooled connection until closed, use it in try-with-resources.
+     * @return Stream<Company>
+     */
+    @Override
+    public Stream<Company> streamAllCompanies() {
+        return _stream(selectCompaniesSql, companyMapper);
+    }
+
+    /**
+     * Returns a lazily fetched Stream over every car.
+     * The stream holds a pooled connection until closed, use it in try-with-resources.
+     * @return Stream<Car>
+     */
+    @Override
+    public Stream<Car> streamAllCars() {
+        return _stream(selectCarsSql, carMapper);
+    }
+
+    /**
+     * Returns a lazily fetched Stream over every customer.
+     * The stream holds a pooled connection until closed, use it in try-with-resources.
+     * @return Stream<Customer>
+     */
+    @Override
+    public Stream<Customer> streamAllCustomers() {
+        return _stream(selectCustomersSql, customerMapper);
+    }
+
+    /**
+     * Returns a snapshot of connection pool statistics.
+     * @return ConnectionPoolMetrics
+     */
+    public ConnectionPoolMetrics getPoolMetrics() {
+        return connectionPool.getMetrics();
+    }
+
+    /**
+     * Report every statement to listener from now on; null turns reporting off,
+     * which skips the timing calls as well unless the slow-query log is on.
+     * @param listener QueryListener or null.
+     */
+    public void setQueryListener(final QueryListener listener) {
+        if (slowQueryLog == null || listener == null) {
+            this.queryListener = listener == null ? slowQueryLog : listener;
+            return;
+        }
+        this.queryListener = (sqlQuery, params, acquireNanos, executeNanos, rows, error) -> {
+            listener.queryExecuted(sqlQuery, params, acquireNanos, executeNanos, rows, error);
+            slowQueryLog.queryExecuted(sqlQuery, params, acquireNanos, executeNanos, rows, error);
+        };
+    }
+
+    public StorageProfile getStorageProfile() {
+        return config.getStorageProfile();
+    }
+
+    /**
+     * Returns the storage profile with the settings H2 reports.
+     * @return StorageMetrics
+     */
+    public StorageMetrics getStorageMetrics() {
+        Map<String, String> settings = _readSettings();
+        File file = new File(databaseFile.getPath() + databaseFileSuffix);
+        return new StorageMetrics(config.getStorageProfile(), connectionUrl, _isReadOnly(),
+                _getSetting(settings, "CACHE_SIZE"), _getSetting(settings, "info.PAGE_SIZE"),
+                _getSetting(settings, "WRITE_DELAY"), _getSetting(settings, "MAX_MEMORY_ROWS"),
+                config.getStorageProfile() == StorageProfile.MEMORY ? -1 : file.length());
+    }
+
+    /**
+     * Write the pending slow-query log entries and close pooled connections.
+     * An in-memory database is dropped.
+     */
+    public void close() {
+        if (slowQueryLog != null) {
+            slowQueryLog.close();
+        }
+        if (explainConnection != null) {
+            try {
+                explainConnection.close();
+            } catch (SQLException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        if (config.getStorageProfile() == StorageProfile.MEMORY) {
+            try (PooledConnection connection = connectionPool.borrow();
+                 Statement statement = connection.getConnection().createStatement()) {
+                statement.execute(shutdownSql);
+            } catch (SQLException ex) {
+                throw new RuntimeException(ex);
+            }
         }
-        return customerList;
+        connectionPool.close();
+    }
+
+    // REPORT SCANS -----------------------------------------------------------
+    // Aggregates over one id range, run by ReportEngine workers in parallel.
+
+    int getMaxCarId() {
+        return _query(selectMaxCarIdSql, resultSet -> resultSet.getInt(1), 1).get(0);
+    }
+
+    int getMaxCustomerId() {
+        return _query(selectMaxCustomerIdSql, resultSet -> resultSet.getInt(1), 1).get(0);
+    }
+
+    long getMaxRentalId() {
+        return _query(selectMaxRentalIdSql, resultSet -> resultSet.getLong(1), 1).get(0);
+    }
+
+    /**
+     * Counts the cars with ids in [fromId, toId] per company, and how many of them are rented.
+     * @return List<CompanyStats>, only companies with cars in the range.
+     */
+    List<CompanyStats> getCarRangeStats(int fromId, int toId) {
+        return _query(selectCarRangeStatsSql, companyStatsMapper, defaultExpectedRows, fromId, toId);
+    }
+
+    /**
+     * Counts the customers with ids in [fromId, toId] and how many of them rent a car.
+     * @return {customers, renting customers}
+     */
+    long[] getCustomerRangeCounts(int fromId, int toId) {
+        return _query(selectCustomerRangeCountsSql,
+                resultSet -> new long[] {resultSet.getLong(1), resultSet.getLong(2)}, 1, fromId, toId).get(0);
+    }
+
+    /**
+     * Sums the ledger rentals with ids in [fromId, toId] per company.
+     * @return One {companyId, rentals, rented seconds} per company with rentals in the range.
+     */
+    List<long[]> getRentalRangeTotals(long fromId, long toId) {
+        return _query(selectRentalRangeTotalsSql,
+                resultSet -> new long[] {resultSet.getInt(1), resultSet.getLong(2), resultSet.getLong(3)},
+                defaultExpectedRows, fromId, toId);
     }
 
     // UTILITY METHODS --------------------------------------------------------
 
+    private Reservation _reserveCar(final Car car, final Customer customer, final Instant start, final Instant end) {
+
+        if (!Objects.requireNonNull(start).isBefore(Objects.requireNonNull(end))) {
+            throw new IllegalArgumentException("Empty time window: " + start + " to " + end);
+        }
+        int carId = Objects.requireNonNull(car).getId();
+        int customerId = Objects.requireNonNull(customer).getId();
+        Object[] params = {customerId, carId, Timestamp.from(start), Timestamp.from(end)};
+        long[] id = {-1};
+        try {
+            _runTransaction(transactionMarker + insertReservationSql, params, connection -> {
+                _executeQuery(connection, lockCarSql, resultSet -> resultSet.getInt(1), carId);
+                List<Timestamp> nextStart = _executeQuery(connection, selectNextReservationStartSql,
+                        resultSet -> resultSet.getTimestamp(1), carId, params[2]);
+                if (!nextStart.isEmpty() && nextStart.get(0).toInstant().isBefore(end)) {
+                    return 0;
+                }
+                if (ReservationIndex.coversNow(start, end)) {
+                    List<Integer> renters = _executeQuery(connection, selectCarRenterSql,
+                            resultSet -> resultSet.getInt(1), carId);
+                    if (!renters.isEmpty() && renters.get(0) != customerId) {
+                        return 0;
+                    }
+                }
+                PreparedStatement preparedStatement = connection.prepareStatement(insertReservationSql, true);
+                _bindParams(preparedStatement, params);
+                int rows = preparedStatement.executeUpdate();
+                try (ResultSet keys = preparedStatement.getGeneratedKeys()) {
+                    if (!keys.next()) {
+                        throw new SQLException("No generated key returned for: " + insertReservationSql);
+                    }
+                    id[0] = keys.getLong(1);
+                }
+                return rows;
+            });
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+        return new Reservation(id[0], customerId, carId, start, end);
+    }
+
+    private List<Car> _getFreeCompanyCars(final Company company, final Instant from, final Instant to,
+                                          boolean ignoreRentals) {
+        if (!Objects.requireNonNull(from).isBefore(Objects.requireNonNull(to))) {
+            throw new IllegalArgumentException("Empty time window: " + from + " to " + to);
+        }
+        return _query(selectFreeCompanyCarsSql, carMapper, defaultExpectedRows,
+                Objects.requireNonNull(company).getId(), Timestamp.from(toStoredTime(from)),
+                Timestamp.from(toStoredTime(to)), ignoreRentals);
+    }
+
     /**
      * Initial setup of the database.
      * @param databaseFilePath Path to the database.
@@ -262,9 +1035,13 @@ public class Database implements DatabaseInterface {
     private void _initDatabase(final String databaseFilePath)
             throws IOException {
 
-        File database = new File(Objects.requireNonNull(databaseFilePath));
-        connectionUrl = String.format("jdbc:%s:file:%s",
-                databaseType, database.getAbsolutePath());
+        databaseFile = new File(Objects.requireNonNull(databaseFilePath)).getAbsoluteFile();
+        connectionUrl = _getConnectionUrl(databaseFile);
+        connectionPool = new ConnectionPool(connectionUrl, dbUser, dbPassword, config);
+        if (config.getStorageProfile() == StorageProfile.READ_ONLY) {
+            _validateStorage();
+            return;
+        }
 
         // Create default tables.
         String sqlQuery =
@@ -287,78 +1064,606 @@ public class Database implements DatabaseInterface {
                 "RENTED_CAR_ID INT, " +
                 "CONSTRAINT FK_RENTED_CAR_ID FOREIGN KEY (RENTED_CAR_ID) " +
                 "REFERENCES CAR(ID) " +
-                "); ";
+                "); " +
+                " " +
+                "CREATE INDEX IF NOT EXISTS IDX_CAR_COMPANY_ID ON CAR(COMPANY_ID); " +
+                "DROP INDEX IF EXISTS IDX_CUSTOMER_RENTED_CAR_ID; " +
+                "CREATE UNIQUE INDEX IF NOT EXISTS UQ_CUSTOMER_RENTED_CAR_ID ON CUSTOMER(RENTED_CAR_ID); " +
+                " " +
+                "ALTER TABLE CUSTOMER ADD COLUMN IF NOT EXISTS RENTED_SINCE TIMESTAMP; " +
+                "UPDATE CUSTOMER SET RENTED_SINCE = CURRENT_TIMESTAMP " +
+                "WHERE RENTED_CAR_ID > 0 AND RENTED_SINCE IS NULL; " +
+                " " +
+                // Append-only ledger of finished rentals; running ones live in CUSTOMER.
+                "CREATE TABLE IF NOT EXISTS RENTAL( " +
+                "ID BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "CUSTOMER_ID INT NOT NULL, " +
+                "CAR_ID INT NOT NULL, " +
+                "COMPANY_ID INT NOT NULL, " +
+                "START_TIME TIMESTAMP NOT NULL, " +
+                "END_TIME TIMESTAMP NOT NULL " +
+                "); " +
+                " " +
+                // Time partitions: the range queries prune short rentals to one period by START_TIME.
+                "ALTER TABLE RENTAL ADD COLUMN IF NOT EXISTS LONG_RENTAL BOOLEAN AS " +
+                "(END_TIME > DATEADD('SECOND', " + rentalPeriodSeconds + ", START_TIME)); " +
+                "DROP INDEX IF EXISTS IDX_RENTAL_CAR_START; " +
+                "DROP INDEX IF EXISTS IDX_RENTAL_END; " +
+                "CREATE INDEX IF NOT EXISTS IDX_RENTAL_CAR_PERIOD ON RENTAL(CAR_ID, LONG_RENTAL, START_TIME); " +
+                "CREATE INDEX IF NOT EXISTS IDX_RENTAL_PERIOD ON RENTAL(LONG_RENTAL, START_TIME); " +
+                " " +
+                // Bookings over [START_TIME, END_TIME), never overlapping for one car.
+                "CREATE TABLE IF NOT EXISTS RESERVATION( " +
+                "ID BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "CUSTOMER_ID INT NOT NULL, " +
+                "CAR_ID INT NOT NULL, " +
+                "START_TIME TIMESTAMP NOT NULL, " +
+                "END_TIME TIMESTAMP NOT NULL, " +
+                "CONSTRAINT FK_RESERVATION_CUSTOMER_ID FOREIGN KEY (CUSTOMER_ID) " +
+                "REFERENCES CUSTOMER(ID), " +
+                "CONSTRAINT FK_RESERVATION_CAR_ID FOREIGN KEY (CAR_ID) " +
+                "REFERENCES CAR(ID), " +
+                "CONSTRAINT CK_RESERVATION_PERIOD CHECK (START_TIME < END_TIME) " +
+                "); " +
+                " " +
+                "CREATE INDEX IF NOT EXISTS IDX_RESERVATION_CAR_END ON RESERVATION(CAR_ID, END_TIME); " +
+                "CREATE INDEX IF NOT EXISTS IDX_RESERVATION_CUSTOMER_START ON RESERVATION(CUSTOMER_ID, START_TIME); " +
+                "CREATE INDEX IF NOT EXISTS IDX_RESERVATION_END ON RESERVATION(END_TIME); ";
 
-        try {
-            _runQuery(UPDATE_QUERY, sqlQuery);
+        try (PooledConnection connection = connectionPool.borrow();
+             Statement statement = connection.getConnection().createStatement()) {
+            statement.execute(sqlQuery);
         } catch (SQLException ex) {
             throw new RuntimeException(ex);
         }
+        _validateStorage();
     }
 
     /**
-     * Wrapper method to run SQL query on a database.
-     * @param queryType EXECUTE_QUERY | UPDATE_QUERY
-     * @param sqlQuery SQL query to run.
-     * @return Row view of the selected rows or null for EXECUTE_QUERY.
-     * @throws SQLException If failed to run the specified query.
+     * Build the H2 URL of the configured storage profile.
+     * @param database Absolute path of the database without the file suffix.
+     * @return JDBC connection URL.
      */
-    private List<Map<String, Object>> _runQuery(QueryType queryType, final String sqlQuery)
-        throws SQLException {
+    private String _getConnectionUrl(final File database) {
 
-        // Register database driver.
-        try {
-            Class.forName(databaseDriver);
+        switch (config.getStorageProfile()) {
+            case MEMORY:
+                return String.format("jdbc:%s:mem:%s;DB_CLOSE_DELAY=-1;MAX_MEMORY_ROWS=%d",
+                        databaseType, database.getName(), config.getMaxMemoryRows());
+            case FILE:
+                return String.format(
+                        "jdbc:%s:file:%s;CACHE_SIZE=%d;PAGE_SIZE=%d;WRITE_DELAY=%d;MAX_MEMORY_ROWS=%d",
+                        databaseType, database.getPath(), config.getCacheSizeKb(),
+                        config.getPageSizeBytes(), config.getWriteDelayMillis(), config.getMaxMemoryRows());
+            case READ_ONLY:
+                if (!new File(database.getPath() + databaseFileSuffix).isFile()) {
+                    throw new IllegalArgumentException("No database to open read-only at " + database);
+                }
+                return String.format("jdbc:%s:file:%s;IFEXISTS=TRUE;ACCESS_MODE_DATA=r",
+                        databaseType, database.getPath());
+            default:
+                throw new IllegalArgumentException("Unknown storage profile " + config.getStorageProfile());
         }
-        catch(ClassNotFoundException ex) {
-            System.err.printf("Error: unable to load %s driver class", databaseDriver);
-            System.exit(1);
+    }
+
+    /**
+     * Check that H2 opened the database the way the storage profile asks for.
+     */
+    private void _validateStorage() {
+
+        boolean readOnly = config.getStorageProfile() == StorageProfile.READ_ONLY;
+        if (_isReadOnly() != readOnly) {
+            throw new IllegalStateException(String.format("Database %s %s read-only",
+                    databaseFile, readOnly ? "is not" : "is"));
+        }
+        if (readOnly) {
+            List<Integer> tableCount = _query(countTablesSql, resultSet -> resultSet.getInt(1), 1);
+            if (tableCount.get(0) != 3) {
+                throw new IllegalStateException("Read-only database " + databaseFile + " has no carsharing tables");
+            }
+            return;
+        }
+        Map<String, String> settings = _readSettings();
+        long maxMemoryRows = _getSetting(settings, "MAX_MEMORY_ROWS");
+        if (maxMemoryRows != config.getMaxMemoryRows()) {
+            throw new IllegalStateException(String.format("H2 applied MAX_MEMORY_ROWS=%d instead of %d",
+                    maxMemoryRows, config.getMaxMemoryRows()));
+        }
+        long cacheSizeKb = _getSetting(settings, "CACHE_SIZE");
+        if (config.getStorageProfile() == StorageProfile.FILE && cacheSizeKb != config.getCacheSizeKb()) {
+            throw new IllegalStateException(String.format("H2 applied CACHE_SIZE=%d instead of %d",
+                    cacheSizeKb, config.getCacheSizeKb()));
+        }
+    }
+
+    private boolean _isReadOnly() {
+        return _query(selectReadOnlySql, resultSet -> resultSet.getBoolean(1), 1).get(0);
+    }
+
+    private Map<String, String> _readSettings() {
+        Map<String, String> settings = new HashMap<>();
+        for (String[] setting : _query(selectSettingsSql,
+                resultSet -> new String[] {resultSet.getString(1), resultSet.getString(2)}, defaultExpectedRows)) {
+            settings.put(setting[0], setting[1]);
+        }
+        return settings;
+    }
+
+    /**
+     * Returns the least string greater than every string starting with prefix,
+     * or null if there is none, as for an empty prefix or one ending in Character.MAX_VALUE.
+     */
+    private static String _prefixUpperBound(final String prefix) {
+        if (prefix.isEmpty()) {
+            return null;
+        }
+        char last = prefix.charAt(prefix.length() - 1);
+        if (last == Character.MAX_VALUE) {
+            return null;
+        }
+        return prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
+    }
+
+    /**
+     * Returns a numeric H2 setting, or -1 if H2 doesn't report it.
+     */
+    private static long _getSetting(final Map<String, String> settings, final String name) {
+        String value = settings.get(name);
+        return value == null ? -1 : Long.parseLong(value);
+    }
+
+    /**
+     * Wrapper method to run an INSERT/UPDATE/DELETE statement on a database.
+     * @param sqlQuery SQL statement to run, with '?' placeholders.
+     * @param params Values bound to the placeholders in order.
+     * @return Number of affected rows.
+     * @throws SQLException If failed to run the specified statement.
+     */
+    private int _runUpdate(final String sqlQuery, final Object... params)
+            throws SQLException {
+
+        // Borrow a pooled connection and run sqlQuery on its cached statement.
+        QueryListener listener = queryListener;
+        long start = listener == null ? 0 : System.nanoTime();
+        long acquired = 0;
+        try (PooledConnection connection = connectionPool.borrow()) {
+            acquired = listener == null ? 0 : System.nanoTime();
+            PreparedStatement preparedStatement = connection.prepareStatement(
+                    Objects.requireNonNull(sqlQuery));
+            _bindParams(preparedStatement, params);
+            int rows = preparedStatement.executeUpdate();
+            _reportQuery(listener, sqlQuery, params, start, acquired, rows, null);
+            return rows;
+        } catch (SQLException | RuntimeException ex) {
+            _reportQuery(listener, sqlQuery, params, start, acquired, -1, ex);
+            throw ex;
         }
+    }
 
-        // Get db connection and run sqlQuery.
-        Connection connection = DriverManager.getConnection(connectionUrl, dbUser, dbPassword);
-        connection.setAutoCommit(true);
-        PreparedStatement preparedStatement = connection.prepareStatement(
-                Objects.requireNonNull(sqlQuery)
-        );
-        ResultSet resultSet = null;
-        switch(queryType) {
-            case UPDATE_QUERY:
-                preparedStatement.executeUpdate();
+    /**
+     * Wrapper method to run an INSERT statement and fetch the generated key.
+     * @param sqlQuery INSERT statement with '?' placeholders.
+     * @param params Values bound to the placeholders in order.
+     * @return Generated AUTO_INCREMENT id.
+     * @throws SQLException If failed to run the statement or no key was generated.
+     */
+    private int _runInsert(final String sqlQuery, final Object... params)
+            throws SQLException {
+
+        QueryListener listener = queryListener;
+        long start = listener == null ? 0 : System.nanoTime();
+        long acquired = 0;
+        try (PooledConnection connection = connectionPool.borrow()) {
+            acquired = listener == null ? 0 : System.nanoTime();
+            PreparedStatement preparedStatement = connection.prepareStatement(
+                    Objects.requireNonNull(sqlQuery), true);
+            _bindParams(preparedStatement, params);
+            int rows = preparedStatement.executeUpdate();
+            try (ResultSet keys = preparedStatement.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("No generated key returned for: " + sqlQuery);
+                }
+                int generatedId = keys.getInt(1);
+                _reportQuery(listener, sqlQuery, params, start, acquired, rows, null);
+                return generatedId;
+            }
+        } catch (SQLException | RuntimeException ex) {
+            _reportQuery(listener, sqlQuery, params, start, acquired, -1, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Wrapper method to run a SELECT query on a database and map the rows.
+     * @param sqlQuery SQL query to run, with '?' placeholders.
+     * @param rowMapper Maps one row to a value object.
+     * @param expectedRows Initial capacity of the result list.
+     * @param params Values bound to the placeholders in order.
+     * @return List of mapped rows.
+     */
+    private <T> List<T> _query(final String sqlQuery, final RowMapper<T> rowMapper,
+                               int expectedRows, final Object... params) {
+
+        QueryListener listener = queryListener;
+        long start = listener == null ? 0 : System.nanoTime();
+        long acquired = 0;
+        try (PooledConnection connection = connectionPool.borrow()) {
+            acquired = listener == null ? 0 : System.nanoTime();
+            PreparedStatement preparedStatement = connection.prepareStatement(
+                    Objects.requireNonNull(sqlQuery));
+            _bindParams(preparedStatement, params);
+            List<T> results = new ArrayList<>(expectedRows);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    results.add(rowMapper.mapRow(resultSet));
+                }
+            }
+            _reportQuery(listener, sqlQuery, params, start, acquired, results.size(), null);
+            return results;
+        } catch (SQLException ex) {
+            _reportQuery(listener, sqlQuery, params, start, acquired, -1, ex);
+            throw new RuntimeException(ex);
+        } catch (RuntimeException ex) {
+            _reportQuery(listener, sqlQuery, params, start, acquired, -1, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Runs a keyset page query: seeks past the cursor id through the primary key index
+     * and fetches one extra row to learn whether more rows follow in that direction.
+     * @param afterSql Query for rows with ids greater than the cursor, ascending.
+     * @param beforeSql Query for rows with ids less than the cursor, descending.
+     * @param rowMapper Maps one row to a value object.
+     * @param idOf Extracts the id of a mapped row.
+     * @param cursor Position of the page.
+     * @param pageSize Maximum number of rows on the page.
+     * @param filterParams Values bound to the placeholders before the id and limit.
+     * @return Page<T>
+     */
+    private <T> Page<T> _queryPage(final String afterSql, final String beforeSql,
+                                   final RowMapper<T> rowMapper, final ToIntFunction<T> idOf,
+                                   final PageCursor cursor, int pageSize,
+                                   final Object... filterParams) {
+
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        Object[] params = Arrays.copyOf(filterParams, filterParams.length + 2);
+        params[filterParams.length] = Objects.requireNonNull(cursor).getId();
+        params[filterParams.length + 1] = pageSize + 1;
+        List<T> rows = _query(cursor.isForward() ? afterSql : beforeSql,
+                rowMapper, pageSize + 1, params);
+
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows.remove(pageSize);
+        }
+        if (!cursor.isForward()) {
+            Collections.reverse(rows);
+        }
+        if (rows.isEmpty()) {
+            return new Page<>(rows, cursor.getId(), cursor.getId(), false, false);
+        }
+        return new Page<>(rows,
+                idOf.applyAsInt(rows.get(0)),
+                idOf.applyAsInt(rows.get(rows.size() - 1)),
+                !cursor.isForward() || hasMore,
+                cursor.isForward() ? !cursor.isFirst() : hasMore);
+    }
+
+    /**
+     * Replaces the car a customer rents inside a transaction and writes the rental it ends to the ledger.
+     * The held car is read first and the update only applies if it is unchanged, retrying otherwise,
+     * so the returned id is the car this transaction released. The update is the only row lock taken:
+     * locking the customer before reading it hangs contended transactions on H2 1.4.200.
+     * @param carId Car to rent, or null to return the held one.
+     * @return Id of the car released, or null if the customer held none.
+     * @throws SQLException If a statement failed or a renting customer does not exist.
+     */
+    private static Integer _swapRentedCar(final PooledConnection connection, int customerId, final Integer carId)
+            throws SQLException {
+
+        while (true) {
+            List<Rental> held = _executeQuery(connection, selectHeldCarSql, rentalMapper, customerId);
+            if (held.isEmpty() && carId != null) {
+                throw new SQLException("No customer with id " + customerId);
+            }
+            if (held.isEmpty() || (carId == null && held.get(0).getCarId() == 0)) {
                 return null;
-            case EXECUTE_QUERY:
-                resultSet = preparedStatement.executeQuery();
-                break;
+            }
+            Rental rental = held.get(0);
+            int updated = carId == null
+                    ? _executeUpdate(connection, returnCarSql, customerId, rental.getCarId())
+                    : _executeUpdate(connection, rentCarSql, carId, customerId, rental.getCarId());
+            if (updated == 0) {
+                continue;
+            }
+            if (rental.getCarId() == 0) {
+                return null;
+            }
+            _executeUpdate(connection, insertRentalSql, customerId, Timestamp.from(rental.getStart()),
+                    Timestamp.from(Instant.now()), rental.getCarId());
+            return rental.getCarId();
         }
-        List<Map<String, Object>> results = Objects.requireNonNull(_mapResultSet(resultSet));
-        preparedStatement.close();
-        connection.close();
-        return results;
     }
 
     /**
-     * Maps specified ResultSet to a List of Maps of Column: Object pairs.
-     * (Row view of the selected rows.)
-     * @param resultSet ResultSet to work on.
-     * @return List<Map<String, Object>>
-     * @throws SQLException If ResultSet is invalid.
+     * Work run by _runTransaction on its connection.
+     */
+    @FunctionalInterface
+    private interface TransactionBody {
+        /**
+         * @return Number of affected rows.
+         */
+        int run(final PooledConnection connection) throws SQLException;
+    }
+
+    /**
+     * Runs body in one transaction on a pooled connection, rolling back if it fails.
+     * @param sqlQuery Statement reported to the listener for the whole transaction.
+     * @param params Parameters reported with it.
+     * @param body Statements to run.
+     * @return Number of rows body affected.
+     * @throws SQLException If a statement or the commit failed.
+     */
+    private int _runTransaction(final String sqlQuery, final Object[] params, final TransactionBody body)
+            throws SQLException {
+
+        QueryListener listener = queryListener;
+        long start = listener == null ? 0 : System.nanoTime();
+        long acquired = 0;
+        try (PooledConnection connection = connectionPool.borrow()) {
+            acquired = listener == null ? 0 : System.nanoTime();
+            Connection jdbcConnection = connection.getConnection();
+            jdbcConnection.setAutoCommit(false);
+            int rows;
+            try {
+                rows = body.run(connection);
+                jdbcConnection.commit();
+            } catch (SQLException | RuntimeException ex) {
+                jdbcConnection.rollback();
+                throw ex;
+            } finally {
+                jdbcConnection.setAutoCommit(true);
+            }
+            _reportQuery(listener, sqlQuery, params, start, acquired, rows, null);
+            return rows;
+        } catch (SQLException | RuntimeException ex) {
+            _reportQuery(listener, sqlQuery, params, start, acquired, -1, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Runs one statement on the cached statements of a borrowed connection.
+     * @return Number of affected rows.
+     */
+    private static int _executeUpdate(final PooledConnection connection, final String sqlQuery,
+                                      final Object... params) throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement(sqlQuery);
+        _bindParams(preparedStatement, params);
+        return preparedStatement.executeUpdate();
+    }
+
+    /**
+     * Runs one query on the cached statements of a borrowed connection.
+     * @return List of mapped rows.
      */
-    private List<Map<String, Object>> _mapResultSet(ResultSet resultSet)
+    private static <T> List<T> _executeQuery(final PooledConnection connection, final String sqlQuery,
+                                             final RowMapper<T> rowMapper, final Object... params)
             throws SQLException {
-        List<Map<String, Object>> results = new ArrayList<>();
-        try (resultSet) {
-            ResultSetMetaData meta = Objects.requireNonNull(resultSet).getMetaData();
-            int numColumns = meta.getColumnCount();
+        PreparedStatement preparedStatement = connection.prepareStatement(sqlQuery);
+        _bindParams(preparedStatement, params);
+        List<T> results = new ArrayList<>();
+        try (ResultSet resultSet = preparedStatement.executeQuery()) {
             while (resultSet.next()) {
-                Map<String, Object> row = new HashMap<>();
-                for (int i = 1; i <= numColumns; ++i) {
-                    String name = meta.getColumnName(i);
-                    Object value = resultSet.getObject(i);
-                    row.put(name, value);
-                }
-                results.add(row);
+                results.add(rowMapper.mapRow(resultSet));
             }
         }
         return results;
     }
+
+    /**
+     * Binds one value object to the placeholders of a batched statement.
+     * @param <T> Value object type.
+     */
+    @FunctionalInterface
+    private interface StatementBinder<T> {
+        void bind(final PreparedStatement preparedStatement, final T item) throws SQLException;
+    }
+
+    /**
+     * Runs an INSERT for every item in batches of the configured size, all in one transaction.
+     * @param sqlQuery INSERT statement with '?' placeholders.
+     * @param items Value objects to insert.
+     * @param binder Binds one item to the statement.
+     * @return Generated ids in insertion order.
+     */
+    private <T> List<Integer> _runBatchInsert(final String sqlQuery, final Iterable<T> items,
+                                              final StatementBinder<T> binder) {
+
+        List<Integer> generatedIds = new ArrayList<>();
+        QueryListener listener = queryListener;
+        long start = listener == null ? 0 : System.nanoTime();
+        long acquired = 0;
+        try (PooledConnection connection = connectionPool.borrow()) {
+            acquired = listener == null ? 0 : System.nanoTime();
+            Connection jdbcConnection = connection.getConnection();
+            jdbcConnection.setAutoCommit(false);
+            try {
+                PreparedStatement preparedStatement = connection.prepareStatement(sqlQuery, true);
+                int pendingRows = 0;
+                for (T item : items) {
+                    binder.bind(preparedStatement, Objects.requireNonNull(item));
+                    preparedStatement.addBatch();
+                    if (++pendingRows == config.getBatchSize()) {
+                        _executeBatch(preparedStatement, generatedIds);
+                        pendingRows = 0;
+                    }
+                }
+                if (pendingRows > 0) {
+                    _executeBatch(preparedStatement, generatedIds);
+                }
+                jdbcConnection.commit();
+            } catch (SQLException | RuntimeException ex) {
+                jdbcConnection.rollback();
+                throw ex;
+            } finally {
+                jdbcConnection.setAutoCommit(true);
+            }
+            _reportQuery(listener, batchMarker + sqlQuery, noParams, start, acquired, generatedIds.size(), null);
+        } catch (SQLException ex) {
+            _reportQuery(listener, batchMarker + sqlQuery, noParams, start, acquired, -1, ex);
+            throw new RuntimeException(ex);
+        } catch (RuntimeException ex) {
+            _reportQuery(listener, batchMarker + sqlQuery, noParams, start, acquired, -1, ex);
+            throw ex;
+        }
+        return generatedIds;
+    }
+
+    /**
+     * Runs an UPDATE for every item in batches of the configured size, in the caller's transaction.
+     * @param preparedStatement UPDATE statement.
+     * @param items Values to bind, one statement execution each.
+     * @param binder Binds one item to the statement.
+     */
+    private <T> void _runUpdateBatches(final PreparedStatement preparedStatement, final Iterable<T> items,
+                                       final StatementBinder<T> binder) throws SQLException {
+
+        int pendingRows = 0;
+        for (T item : items) {
+            binder.bind(preparedStatement, item);
+            preparedStatement.addBatch();
+            if (++pendingRows == config.getBatchSize()) {
+                preparedStatement.executeBatch();
+                pendingRows = 0;
+            }
+        }
+        if (pendingRows > 0) {
+            preparedStatement.executeBatch();
+        }
+    }
+
+    private static void _executeBatch(final PreparedStatement preparedStatement,
+                                      final List<Integer> generatedIds) throws SQLException {
+        preparedStatement.executeBatch();
+        try (ResultSet keys = preparedStatement.getGeneratedKeys()) {
+            while (keys.next()) {
+                generatedIds.add(keys.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * Runs a SELECT query in H2 lazy execution mode and exposes its rows as a Stream,
+     * so rows are fetched in chunks of the configured fetch size instead of being
+     * materialised up front. Closing the stream closes the cursor and releases the connection.
+     * @param sqlQuery SQL query to run, with '?' placeholders.
+     * @param rowMapper Maps one row to a value object.
+     * @param params Values bound to the placeholders in order.
+     * @return Stream<T>
+     */
+    private <T> Stream<T> _stream(final String sqlQuery, final RowMapper<T> rowMapper,
+                                  final Object... params) {
+
+        QueryListener listener = queryListener;
+        long start = listener == null ? 0 : System.nanoTime();
+        long acquired = 0;
+        PooledConnection connection = null;
+        try {
+            connection = connectionPool.borrow();
+            acquired = listener == null ? 0 : System.nanoTime();
+            Connection jdbcConnection = connection.getConnection();
+            try (Statement statement = jdbcConnection.createStatement()) {
+                statement.execute(lazyQueryExecutionOnSql);
+            }
+            // Not taken from the statement cache, the cursor stays open while streaming.
+            PreparedStatement preparedStatement = jdbcConnection.prepareStatement(sqlQuery);
+            preparedStatement.setFetchSize(config.getStreamFetchSize());
+            _bindParams(preparedStatement, params);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            _reportQuery(listener, sqlQuery, params, start, acquired, -1, null);
+            final PooledConnection heldConnection = connection;
+            return StreamSupport.stream(new ResultSetSpliterator<>(resultSet, rowMapper), false)
+                    .onClose(() -> _closeStream(heldConnection, preparedStatement));
+        } catch (SQLException ex) {
+            _reportQuery(listener, sqlQuery, params, start, acquired, -1, ex);
+            if (connection != null) {
+                _closeStream(connection, null);
+            }
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static void _closeStream(final PooledConnection connection,
+                                     final PreparedStatement preparedStatement) {
+        try (connection) {
+            if (preparedStatement != null) {
+                preparedStatement.close();
+            }
+            try (Statement statement = connection.getConnection().createStatement()) {
+                statement.execute(lazyQueryExecutionOffSql);
+            }
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Explains a SELECT on the dedicated explain connection, without reporting it to the listener.
+     * @param sqlQuery SELECT with '?' placeholders.
+     * @param params Values bound to the placeholders in order.
+     * @param analyze true to run the SELECT again under EXPLAIN ANALYZE for the actual scan counts.
+     * @return Plan.
+     */
+    private String _explain(final String sqlQuery, final Object[] params, boolean analyze) {
+
+        try {
+            if (explainConnection == null) {
+                explainConnection = DriverManager.getConnection(connectionUrl, dbUser, dbPassword);
+            }
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+        try (PreparedStatement preparedStatement = explainConnection.prepareStatement(
+                (analyze ? explainAnalyzePrefix : explainPrefix) + sqlQuery)) {
+            _bindParams(preparedStatement, params);
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    plan.append(resultSet.getString(1));
+                }
+            }
+            return plan.toString();
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Hand one finished statement to the listener, if any.
+     * @param acquiredNanos When the connection was obtained, 0 if borrowing it failed.
+     */
+    private static void _reportQuery(final QueryListener listener, final String sqlQuery,
+                                     final Object[] params, long startNanos, long acquiredNanos,
+                                     int rows, final Exception error) {
+        if (listener == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (acquiredNanos == 0) {
+            listener.queryExecuted(sqlQuery, params, now - startNanos, 0, rows, error);
+        } else {
+            listener.queryExecuted(sqlQuery, params, acquiredNanos - startNanos, now - acquiredNanos, rows, error);
+        }
+    }
+
+    private static void _bindParams(final PreparedStatement preparedStatement, final Object... params)
+            throws SQLException {
+        for (int i = 0; i < params.length; ++i) {
+            preparedStatement.setObject(i + 1, params[i]);
+        }
+    }
 }
@@ -0,0 +1,463 @@
+package carsharing.impementation;
+
+import java.util.Objects;
+
+/**
+ * Tunable settings of a Database and its connection pool.
+ */
+public class DatabaseConfig {
+
+    private int maxPoolSize = 10;
+    private long connectionTimeoutMillis = 30_000;
+    private long idleTimeoutMillis = 600_000;
+    private int validationTimeoutSeconds = 5;
+    private long validationIdleMillis = 500;
+    private long leakDetectionThresholdMillis = 60_000;
+    private int statementCacheSize = 64;
+    private int cacheMaxEntries = 10_000;
+    private long cacheTtlMillis = 300_000;
+    private int batchSize = 1_000;
+    private int streamFetchSize = 1_000;
+    private int asyncThreads = 10;
+    private int asyncMaxInFlight = 1_024;
+    private Durability rentalDurability = Durability.SYNC;
+    private long flushIntervalMillis = 10;
+    private int flushMaxOps = 1_000;
+    private long flushMaxBackoffMillis = 1_000;
+    private long slowQueryThresholdMillis = 0;
+    private String slowQueryLogFile = "slow-query.log";
+    private long slowQueryLogMaxBytes = 10_000_000;
+    private int slowQueryLogFiles = 5;
+    private long slowQueryAnalyzeIntervalMillis = 1_000;
+    private StorageProfile storageProfile = StorageProfile.FILE;
+    private int cacheSizeKb = 65_536;
+    private int pageSizeBytes = 4_096;
+    private int writeDelayMillis = 500;
+    private int maxMemoryRows = 200_000;
+    private int reportParallelism = 0;
+    private int reportPartitionSize = 50_000;
+
+    /**
+     * Maximum number of connections held by the pool.
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public DatabaseConfig setMaxPoolSize(int maxPoolSize) {
+        if (maxPoolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + maxPoolSize);
+        }
+        this.maxPoolSize = maxPoolSize;
+        return this;
+    }
+
+    /**
+     * How long a caller waits for a free connection before failing.
+     */
+    public long getConnectionTimeoutMillis() {
+        return connectionTimeoutMillis;
+    }
+
+    public DatabaseConfig setConnectionTimeoutMillis(long connectionTimeoutMillis) {
+        if (connectionTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeout can't be negative: " + connectionTimeoutMillis);
+        }
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * How long a connection may stay idle before it is closed (0 keeps them forever).
+     */
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public DatabaseConfig setIdleTimeoutMillis(long idleTimeoutMillis) {
+        if (idleTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeout can't be negative: " + idleTimeoutMillis);
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Timeout of the validity check run on idle connections when they are borrowed
+     * (0 disables validation).
+     */
+    public int getValidationTimeoutSeconds() {
+        return validationTimeoutSeconds;
+    }
+
+    public DatabaseConfig setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        if (validationTimeoutSeconds < 0) {
+            throw new IllegalArgumentException("Timeout can't be negative: " + validationTimeoutSeconds);
+        }
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        return this;
+    }
+
+    /**
+     * How long a connection must have been idle before a borrow checks its validity;
+     * connections returned more recently are handed out unchecked (0 checks every borrow).
+     */
+    public long getValidationIdleMillis() {
+        return validationIdleMillis;
+    }
+
+    public DatabaseConfig setValidationIdleMillis(long validationIdleMillis) {
+        if (validationIdleMillis < 0) {
+            throw new IllegalArgumentException("Idle time can't be negative: " + validationIdleMillis);
+        }
+        this.validationIdleMillis = validationIdleMillis;
+        return this;
+    }
+
+    /**
+     * How long a connection may be borrowed before it is reported as leaked
+     * (0 disables leak detection).
+     */
+    public long getLeakDetectionThresholdMillis() {
+        return leakDetectionThresholdMillis;
+    }
+
+    public DatabaseConfig setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis) {
+        if (leakDetectionThresholdMillis < 0) {
+            throw new IllegalArgumentException("Threshold can't be negative: " + leakDetectionThresholdMillis);
+        }
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+        return this;
+    }
+
+    /**
+     * Number of prepared statements cached per pooled connection (0 disables caching).
+     */
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public DatabaseConfig setStatementCacheSize(int statementCacheSize) {
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Cache size can't be negative: " + statementCacheSize);
+        }
+        this.statementCacheSize = statementCacheSize;
+        return this;
+    }
+
+    /**
+     * Maximum number of entries in each fleet cache of a CachingDatabase.
+     */
+    public int getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public DatabaseConfig setCacheMaxEntries(int cacheMaxEntries) {
+        if (cacheMaxEntries < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + cacheMaxEntries);
+        }
+        this.cacheMaxEntries = cacheMaxEntries;
+        return this;
+    }
+
+    /**
+     * How long a CachingDatabase entry stays fresh (0 keeps entries until evicted by size).
+     */
+    public long getCacheTtlMillis() {
+        return cacheTtlMillis;
+    }
+
+    public DatabaseConfig setCacheTtlMillis(long cacheTtlMillis) {
+        if (cacheTtlMillis < 0) {
+            throw new IllegalArgumentException("TTL can't be negative: " + cacheTtlMillis);
+        }
+        this.cacheTtlMillis = cacheTtlMillis;
+        return this;
+    }
+
+    /**
+     * Number of rows sent per JDBC batch by the bulk add methods.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public DatabaseConfig setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * JDBC fetch size used by the streaming readers.
+     */
+    public int getStreamFetchSize() {
+        return streamFetchSize;
+    }
+
+    public DatabaseConfig setStreamFetchSize(int streamFetchSize) {
+        if (streamFetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be positive: " + streamFetchSize);
+        }
+        this.streamFetchSize = streamFetchSize;
+        return this;
+    }
+
+    /**
+     * Number of worker threads running AsyncDatabase calls.
+     */
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    public DatabaseConfig setAsyncThreads(int asyncThreads) {
+        if (asyncThreads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + asyncThreads);
+        }
+        this.asyncThreads = asyncThreads;
+        return this;
+    }
+
+    /**
+     * Maximum number of AsyncDatabase calls queued or running at once; further calls are rejected.
+     */
+    public int getAsyncMaxInFlight() {
+        return asyncMaxInFlight;
+    }
+
+    public DatabaseConfig setAsyncMaxInFlight(int asyncMaxInFlight) {
+        if (asyncMaxInFlight < 1) {
+            throw new IllegalArgumentException("In-flight limit must be positive: " + asyncMaxInFlight);
+        }
+        this.asyncMaxInFlight = asyncMaxInFlight;
+        return this;
+    }
+
+    /**
+     * When a rental change is written to disk, see Durability.
+     */
+    public Durability getRentalDurability() {
+        return rentalDurability;
+    }
+
+    public DatabaseConfig setRentalDurability(final Durability rentalDurability) {
+        this.rentalDurability = Objects.requireNonNull(rentalDurability);
+        return this;
+    }
+
+    /**
+     * Longest time a buffered rental change waits before it is flushed.
+     */
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public DatabaseConfig setFlushIntervalMillis(long flushIntervalMillis) {
+        if (flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("Flush interval must be positive: " + flushIntervalMillis);
+        }
+        this.flushIntervalMillis = flushIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Number of buffered rental changes that triggers a flush before the interval ends.
+     */
+    public int getFlushMaxOps() {
+        return flushMaxOps;
+    }
+
+    public DatabaseConfig setFlushMaxOps(int flushMaxOps) {
+        if (flushMaxOps < 1) {
+            throw new IllegalArgumentException("Flush size must be positive: " + flushMaxOps);
+        }
+        this.flushMaxOps = flushMaxOps;
+        return this;
+    }
+
+    /**
+     * Longest wait between retries while flushes keep failing; the wait doubles from flushIntervalMillis.
+     */
+    public long getFlushMaxBackoffMillis() {
+        return flushMaxBackoffMillis;
+    }
+
+    public DatabaseConfig setFlushMaxBackoffMillis(long flushMaxBackoffMillis) {
+        if (flushMaxBackoffMillis < 1) {
+            throw new IllegalArgumentException("Flush backoff must be positive: " + flushMaxBackoffMillis);
+        }
+        this.flushMaxBackoffMillis = flushMaxBackoffMillis;
+        return this;
+    }
+
+    /**
+     * Statements running at least this long are written to the slow-query log (0 disables it).
+     */
+    public long getSlowQueryThresholdMillis() {
+        return slowQueryThresholdMillis;
+    }
+
+    public DatabaseConfig setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+        if (slowQueryThresholdMillis < 0) {
+            throw new IllegalArgumentException("Threshold can't be negative: " + slowQueryThresholdMillis);
+        }
+        this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+        return this;
+    }
+
+    public String getSlowQueryLogFile() {
+        return slowQueryLogFile;
+    }
+
+    public DatabaseConfig setSlowQueryLogFile(final String slowQueryLogFile) {
+        this.slowQueryLogFile = Objects.requireNonNull(slowQueryLogFile);
+        return this;
+    }
+
+    /**
+     * Size at which the slow-query log is rotated.
+     */
+    public long getSlowQueryLogMaxBytes() {
+        return slowQueryLogMaxBytes;
+    }
+
+    public DatabaseConfig setSlowQueryLogMaxBytes(long slowQueryLogMaxBytes) {
+        if (slowQueryLogMaxBytes < 1) {
+            throw new IllegalArgumentException("Log size must be positive: " + slowQueryLogMaxBytes);
+        }
+        this.slowQueryLogMaxBytes = slowQueryLogMaxBytes;
+        return this;
+    }
+
+    /**
+     * Rotated slow-query logs kept besides the current one.
+     */
+    public int getSlowQueryLogFiles() {
+        return slowQueryLogFiles;
+    }
+
+    public DatabaseConfig setSlowQueryLogFiles(int slowQueryLogFiles) {
+        if (slowQueryLogFiles < 0) {
+            throw new IllegalArgumentException("File count can't be negative: " + slowQueryLogFiles);
+        }
+        this.slowQueryLogFiles = slowQueryLogFiles;
+        return this;
+    }
+
+    /**
+     * Minimum time between two slow SELECTs re-run under EXPLAIN ANALYZE to count scanned rows;
+     * the others only get their plan from EXPLAIN (0 analyzes every one).
+     */
+    public long getSlowQueryAnalyzeIntervalMillis() {
+        return slowQueryAnalyzeIntervalMillis;
+    }
+
+    public DatabaseConfig setSlowQueryAnalyzeIntervalMillis(long slowQueryAnalyzeIntervalMillis) {
+        if (slowQueryAnalyzeIntervalMillis < 0) {
+            throw new IllegalArgumentException("Interval can't be negative: " + slowQueryAnalyzeIntervalMillis);
+        }
+        this.slowQueryAnalyzeIntervalMillis = slowQueryAnalyzeIntervalMillis;
+        return this;
+    }
+
+    public StorageProfile getStorageProfile() {
+        return storageProfile;
+    }
+
+    public DatabaseConfig setStorageProfile(final StorageProfile storageProfile) {
+        this.storageProfile = Objects.requireNonNull(storageProfile);
+        return this;
+    }
+
+    /**
+     * H2 page cache of the FILE profile in KB.
+     */
+    public int getCacheSizeKb() {
+        return cacheSizeKb;
+    }
+
+    public DatabaseConfig setCacheSizeKb(int cacheSizeKb) {
+        if (cacheSizeKb < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + cacheSizeKb);
+        }
+        this.cacheSizeKb = cacheSizeKb;
+        return this;
+    }
+
+    /**
+     * MVStore page split size of the FILE profile, only used when the file is created.
+     */
+    public int getPageSizeBytes() {
+        return pageSizeBytes;
+    }
+
+    public DatabaseConfig setPageSizeBytes(int pageSizeBytes) {
+        if (pageSizeBytes < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSizeBytes);
+        }
+        this.pageSizeBytes = pageSizeBytes;
+        return this;
+    }
+
+    /**
+     * Longest time H2 waits before writing a commit to the file of the FILE profile.
+     */
+    public int getWriteDelayMillis() {
+        return writeDelayMillis;
+    }
+
+    public DatabaseConfig setWriteDelayMillis(int writeDelayMillis) {
+        if (writeDelayMillis < 0) {
+            throw new IllegalArgumentException("Write delay can't be negative: " + writeDelayMillis);
+        }
+        this.writeDelayMillis = writeDelayMillis;
+        return this;
+    }
+
+    /**
+     * Result rows kept in memory before H2 buffers the result to a temporary file.
+     */
+    public int getMaxMemoryRows() {
+        return maxMemoryRows;
+    }
+
+    public DatabaseConfig setMaxMemoryRows(int maxMemoryRows) {
+        if (maxMemoryRows < 1) {
+            throw new IllegalArgumentException("Row count must be positive: " + maxMemoryRows);
+        }
+        this.maxMemoryRows = maxMemoryRows;
+        return this;
+    }
+
+    /**
+     * Worker threads of the ReportEngine, 0 for one per core; never more than maxPoolSize.
+     */
+    public int getReportParallelism() {
+        return reportParallelism;
+    }
+
+    public DatabaseConfig setReportParallelism(int reportParallelism) {
+        if (reportParallelism < 0) {
+            throw new IllegalArgumentException("Parallelism can't be negative: " + reportParallelism);
+        }
+        this.reportParallelism = reportParallelism;
+        return this;
+    }
+
+    /**
+     * Width of the id range one ReportEngine task scans before it stops splitting.
+     */
+    public int getReportPartitionSize() {
+        return reportPartitionSize;
+    }
+
+    public DatabaseConfig setReportPartitionSize(int reportPartitionSize) {
+        if (reportPartitionSize < 1) {
+            throw new IllegalArgumentException("Partition size must be positive: " + reportPartitionSize);
+        }
+        this.reportPartitionSize = reportPartitionSize;
+        return this;
+    }
+}
@@ -3,9 +3,13 @@ package carsharing.impementation;
 import carsharing.interfaces.DatabaseInterface;
 import carsharing.valueobjects.Car;
 import carsharing.valueobjects.Company;
+import carsharing.valueobjects.CompanyStats;
 import carsharing.valueobjects.Customer;
+import carsharing.valueobjects.Page;
+import carsharing.valueobjects.PageCursor;
 
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * Provides interactive CLI menu for managing a Database.
@@ -13,6 +17,7 @@ import java.util.*;
 public class DbManagerService {
 
     private static final Map<String, String> menuMap;
+    private static final int pageSize = 20;
     private final DatabaseInterface database;
 
     // Initialize menu items.
@@ -22,10 +27,12 @@ public class DbManagerService {
                 "1. Log in as a manager\n" +
                 "2. Log in as a customer\n" +
                 "3. Create a customer\n" +
+                "4. Find a customer by name\n" +
                 "0. Exit\n";
         String manageCompanies =
                 "1. Company list\n" +
                 "2. Create a company\n" +
+                "3. Fleet utilisation\n" +
                 "0. Back\n";
         String manageCompanyCars =
                 "1. Car list\n" +
@@ -47,7 +54,7 @@ public class DbManagerService {
     }
 
     /**
-     * Begin main loop.
+     * Begin main loop, returning when Exit is chosen so the caller can flush and close the database.
      */
     public void start() {
 
@@ -60,8 +67,7 @@ public class DbManagerService {
                 selectedOption = Integer.parseInt(token);
                 switch (selectedOption) {
                     case 0:
-                        System.exit(0);
-                        break;
+                        return;
                     case 1:
                         _managerLogin();
                         break;
@@ -71,6 +77,9 @@ public class DbManagerService {
                     case 3:
                         _createCustomer();
                         break;
+                    case 4:
+                        _findCustomer();
+                        break;
                     default:
                         System.err.println("Invalid option!\n");
                 }
@@ -98,6 +107,9 @@ public class DbManagerService {
                     case 2:
                         _createCompany();
                         break;
+                    case 3:
+                        _printFleetUtilisation();
+                        break;
                     default:
                         System.err.println("Invalid option!\n");
                         break;
@@ -110,33 +122,38 @@ public class DbManagerService {
 
     private void _customerLogin() {
 
-        List<Customer> customerList = database.getAllCustomers();
-        if (customerList.isEmpty()) {
+        Page<Customer> firstPage = database.getCustomers(PageCursor.first(), pageSize);
+        if (firstPage.isEmpty()) {
             System.out.println("The customer list is empty!\n");
             return;
         }
+        Customer customer = _choosePaged("Choose a customer:", firstPage,
+                cursor -> database.getCustomers(cursor, pageSize), Customer::getName);
+        if (customer != null) {
+            _openCustomerMenu(customer);
+        }
+    }
+
+    private void _findCustomer() {
 
         Scanner in = new Scanner(System.in);
-        for (;;) {
-            System.out.println("Choose a customer:");
-            customerList.forEach(customer -> System.out.printf("%d. %s\n",
-                    customer.getId(), customer.getName()));
-            System.out.println("0. Back\n");
-            String token = in.next().trim();
-            int selectedOption = 0;
-            try {
-                selectedOption = Integer.parseInt(token);
-                if (selectedOption == 0) {
-                    return;
-                } else if (selectedOption <= customerList.size()) {
-                    _openCustomerMenu(customerList.get(selectedOption - 1));
-                    return;
-                } else {
-                    System.err.println("Invalid option!\n");
-                }
-            } catch (NumberFormatException ex) {
-                System.err.println("Invalid option!\n");
-            }
+        System.out.println("Enter the beginning of the customer name:");
+        String namePrefix = in.next().trim();
+        List<Customer> customers = database.findCustomers(namePrefix, pageSize + 1);
+        if (customers.isEmpty()) {
+            System.out.printf("No customer name starts with '%s'!\n\n", namePrefix);
+            return;
+        }
+        if (customers.size() > pageSize) {
+            customers.remove(pageSize);
+            System.out.printf("Showing the first %d matches, type more of the name to narrow them down.\n",
+                    pageSize);
+        }
+        Page<Customer> matches = new Page<>(customers, customers.get(0).getId(),
+                customers.get(customers.size() - 1).getId(), false, false);
+        Customer customer = _choosePaged("Choose a customer:", matches, cursor -> matches, Customer::getName);
+        if (customer != null) {
+            _openCustomerMenu(customer);
         }
     }
 
@@ -155,36 +172,15 @@ public class DbManagerService {
 
     private void _printCompanyList() {
 
-        List<Company> companyList = database.getAllCompanies();
-        if (companyList.isEmpty()) {
+        Page<Company> firstPage = database.getCompanies(PageCursor.first(), pageSize);
+        if (firstPage.isEmpty()) {
             System.out.println("The company list is empty!\n");
             return;
         }
-
-        Scanner in = new Scanner(System.in);
-        for (;;) {
-            System.out.println("Choose the company:");
-            int id = 1;
-            for (Company company : companyList) {
-                System.out.printf("%d. %s\n",
-                        id++, company.getName());
-            }
-            System.out.println("0. Back\n");
-            String token = in.next().trim();
-            int selectedOption = 0;
-            try {
-                selectedOption = Integer.parseInt(token);
-                if (selectedOption == 0) {
-                    return;
-                } else if (selectedOption <= companyList.size()) {
-                    _manageCompanyCars(companyList.get(selectedOption - 1));
-                    return;
-                } else {
-                    System.err.println("Invalid option!\n");
-                }
-            } catch (NumberFormatException ex) {
-                System.err.println("Invalid option!\n");
-            }
+        Company company = _choosePaged("Choose the company:", firstPage,
+                cursor -> database.getCompanies(cursor, pageSize), Company::getName);
+        if (company != null) {
+            _manageCompanyCars(company);
         }
     }
 
@@ -201,6 +197,26 @@ public class DbManagerService {
         System.out.println("The company was created!\n");
     }
 
+    private void _printFleetUtilisation() {
+
+        List<CompanyStats> allStats = database.getAllCompanyStats();
+        if (allStats.isEmpty()) {
+            System.out.println("The company list is empty!\n");
+            return;
+        }
+        System.out.println("Fleet utilisation:");
+        int totalCars = 0;
+        int rentedCars = 0;
+        for (CompanyStats stats : allStats) {
+            System.out.printf("%s: %d of %d cars rented (%.1f%%)\n", stats.getCompanyName(),
+                    stats.getRentedCars(), stats.getTotalCars(), stats.getUtilisation() * 100);
+            totalCars += stats.getTotalCars();
+            rentedCars += stats.getRentedCars();
+        }
+        System.out.printf("Total: %d of %d cars rented (%.1f%%)\n\n", rentedCars, totalCars,
+                totalCars == 0 ? 0.0 : 100.0 * rentedCars / totalCars);
+    }
+
     private void _openCustomerMenu(Customer customer) {
 
         Scanner in = new Scanner(System.in);
@@ -371,7 +387,11 @@ public class DbManagerService {
                     return;
                 } else if (selectedOption <= availableCars.size()) {
                     Car selectedCar = availableCars.get(selectedOption - 1);
-                    database.rentCarToCustomer(selectedCar, customer);
+                    if (!database.tryRent(selectedCar, customer)) {
+                        System.out.printf("'%s' was just rented by someone else!\n\n",
+                                selectedCar.getName());
+                        return;
+                    }
                     customer.setRentedCarId(selectedCar.getId());
                     System.out.printf("You rented '%s'\n\n", selectedCar.getName());
                     return;
@@ -383,4 +403,57 @@ public class DbManagerService {
             }
         }
     }
+
+    /**
+     * Let the user pick one row of a paged list, moving between pages with 'n' and 'p'.
+     * @param title Menu title.
+     * @param firstPage Page shown first.
+     * @param pageLoader Loads the page at a cursor.
+     * @param label Text shown for a row.
+     * @return Selected row or null if the user went back.
+     */
+    private <T> T _choosePaged(String title, Page<T> firstPage,
+                               Function<PageCursor, Page<T>> pageLoader,
+                               Function<T, String> label) {
+
+        Page<T> page = firstPage;
+        Scanner in = new Scanner(System.in);
+        for (;;) {
+            System.out.println(title);
+            List<T> items = page.getItems();
+            int id = 1;
+            for (T item : items) {
+                System.out.printf("%d. %s\n", id++, label.apply(item));
+            }
+            if (page.hasNext()) {
+                System.out.println("n. Next page");
+            }
+            if (page.hasPrevious()) {
+                System.out.println("p. Previous page");
+            }
+            System.out.println("0. Back\n");
+            String token = in.next().trim();
+            if (token.equals("n") && page.hasNext()) {
+                page = pageLoader.apply(page.nextCursor());
+                continue;
+            }
+            if (token.equals("p") && page.hasPrevious()) {
+                page = pageLoader.apply(page.previousCursor());
+                continue;
+            }
+            int selectedOption = 0;
+            try {
+                selectedOption = Integer.parseInt(token);
+                if (selectedOption == 0) {
+                    return null;
+                } else if (selectedOption > 0 && selectedOption <= items.size()) {
+                    return items.get(selectedOption - 1);
+                } else {
+                    System.err.println("Invalid option!\n");
+                }
+            } catch (NumberFormatException ex) {
+                System.err.println("Invalid option!\n");
+            }
+        }
+    }
 }
@@ -0,0 +1,23 @@
+package carsharing.impementation;
+
+/**
+ * When a rental or return reaches the disk.
+ */
+public enum Durability {
+
+    /**
+     * Every change is its own committed UPDATE before the call returns.
+     */
+    SYNC,
+
+    /**
+     * Changes are buffered and committed together; the call returns once its group is committed.
+     */
+    GROUP_COMMIT,
+
+    /**
+     * Changes are buffered and committed together in the background; the call returns at once,
+     * so a crash can lose the changes of the last flush interval.
+     */
+    WRITE_BEHIND
+}
@@ -0,0 +1,143 @@
+package carsharing.impementation;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Size-bounded LRU map whose entries expire after a fixed time to live.
+ * A miss loaded through get(key, loader) is only cached if no write touched the key
+ * while the loader ran, so a slow load can't overwrite a fresher write-through.
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+class ExpiringLruCache<K, V> {
+
+    private static class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<K, Entry<V>> entries;
+    // Key to the stamp of the load in flight for it; writes to the key remove the stamp.
+    private final Map<K, Object> loads = new HashMap<>();
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxEntries Maximum number of entries kept.
+     * @param ttlMillis Time to live of an entry (0 keeps entries until evicted by size).
+     */
+    ExpiringLruCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() <= ExpiringLruCache.this.maxEntries) {
+                    return false;
+                }
+                ++evictions;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value or null on a miss.
+     */
+    synchronized V get(final K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && _isExpired(entry)) {
+            entries.remove(key);
+            ++evictions;
+            entry = null;
+        }
+        if (entry == null) {
+            ++misses;
+            return null;
+        }
+        ++hits;
+        return entry.value;
+    }
+
+    /**
+     * Returns the cached value, loading and caching it on a miss.
+     * The loader runs outside the cache lock, so concurrent misses may load twice;
+     * the value is returned but not cached if the key was written, invalidated or
+     * loaded again meanwhile.
+     */
+    V get(final K key, final Supplier<V> loader) {
+        Object stamp = new Object();
+        synchronized (this) {
+            V value = get(key);
+            if (value != null) {
+                return value;
+            }
+            loads.put(key, stamp);
+        }
+        V value = null;
+        try {
+            value = loader.get();
+        } finally {
+            synchronized (this) {
+                if (loads.remove(key, stamp) && value != null) {
+                    _put(key, value);
+                }
+            }
+        }
+        return value;
+    }
+
+    synchronized void put(final K key, final V value) {
+        loads.remove(key);
+        _put(key, value);
+    }
+
+    /**
+     * Replace a live entry with a value computed from it, keeping its expiry time.
+     * Absent or expired entries are left alone.
+     */
+    synchronized void computeIfPresent(final K key, final UnaryOperator<V> update) {
+        // A load in flight read the key before this write, absent or not.
+        loads.remove(key);
+        Entry<V> entry = entries.get(key);
+        if (entry != null && !_isExpired(entry)) {
+            entries.put(key, new Entry<>(update.apply(entry.value), entry.expiresAt));
+        }
+    }
+
+    synchronized void invalidate(final K key) {
+        loads.remove(key);
+        entries.remove(key);
+    }
+
+    synchronized void invalidateAll() {
+        loads.clear();
+        entries.clear();
+    }
+
+    synchronized CacheStatistics getStatistics() {
+        return new CacheStatistics(hits, misses, evictions, entries.size());
+    }
+
+    private void _put(final K key, final V value) {
+        long expiresAt = ttlNanos == 0 ? Long.MAX_VALUE : System.nanoTime() + ttlNanos;
+        entries.put(key, new Entry<>(value, expiresAt));
+    }
+
+    private boolean _isExpired(final Entry<V> entry) {
+        return ttlNanos != 0 && System.nanoTime() - entry.expiresAt > 0;
+    }
+}
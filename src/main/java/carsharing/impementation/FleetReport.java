@@ -0,0 +1,111 @@
+package carsharing.impementation;
+
+import carsharing.valueobjects.CompanyStats;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fleet-wide figures computed by a ReportEngine run, with the time each stage took.
+ */
+public class FleetReport {
+
+    private final List<CompanyStats> companyStats;
+    private final long customers;
+    private final long rentingCustomers;
+    private final Map<Integer, long[]> rentalTotals;
+    private final Map<String, Long> stageNanos;
+    private final int parallelism;
+    private final int partitions;
+
+    /**
+     * @param companyStats Car counts of every company, ordered by company id.
+     * @param rentalTotals Company id to {finished rentals, rented seconds}.
+     * @param stageNanos Stage name to elapsed time, in run order.
+     */
+    public FleetReport(final List<CompanyStats> companyStats, long customers, long rentingCustomers,
+                       final Map<Integer, long[]> rentalTotals, final Map<String, Long> stageNanos,
+                       int parallelism, int partitions) {
+        this.companyStats = List.copyOf(companyStats);
+        this.customers = customers;
+        this.rentingCustomers = rentingCustomers;
+        this.rentalTotals = Map.copyOf(rentalTotals);
+        this.stageNanos = stageNanos;
+        this.parallelism = parallelism;
+        this.partitions = partitions;
+    }
+
+    public List<CompanyStats> getCompanyStats() {
+        return companyStats;
+    }
+
+    public long getCars() {
+        return companyStats.stream().mapToLong(CompanyStats::getTotalCars).sum();
+    }
+
+    /**
+     * Cars nobody rents right now.
+     */
+    public long getIdleCars() {
+        return companyStats.stream().mapToLong(CompanyStats::getAvailableCars).sum();
+    }
+
+    public long getCustomers() {
+        return customers;
+    }
+
+    /**
+     * Customers renting no car right now.
+     */
+    public long getCustomersWithoutRental() {
+        return customers - rentingCustomers;
+    }
+
+    /**
+     * Finished rentals of a company in the ledger.
+     */
+    public long getRentals(int companyId) {
+        long[] totals = rentalTotals.get(companyId);
+        return totals == null ? 0 : totals[0];
+    }
+
+    /**
+     * Total time the finished rentals of a company lasted, in seconds.
+     */
+    public long getRentedSeconds(int companyId) {
+        long[] totals = rentalTotals.get(companyId);
+        return totals == null ? 0 : totals[1];
+    }
+
+    public Map<String, Long> getStageNanos() {
+        return stageNanos;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Id ranges scanned over all stages.
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-30s %10s %10s %10s %10s %12s\n",
+                "company", "cars", "rented", "idle", "rentals", "rented h"));
+        for (CompanyStats stats : companyStats) {
+            text.append(String.format("%-30s %10d %10d %10d %10d %12.1f\n", stats.getCompanyName(),
+                    stats.getTotalCars(), stats.getRentedCars(), stats.getAvailableCars(),
+                    getRentals(stats.getCompanyId()), getRentedSeconds(stats.getCompanyId()) / 3600.0));
+        }
+        text.append(String.format("Cars: %d, idle %d\n", getCars(), getIdleCars()));
+        text.append(String.format("Customers: %d, without rental %d\n", customers, getCustomersWithoutRental()));
+        text.append(String.format("Stages (%d workers, %d partitions):", parallelism, partitions));
+        stageNanos.forEach((stage, nanos) -> text.append(String.format(" %s %.1f ms", stage, nanos / 1e6)));
+        return text.append('\n').toString();
+    }
+}
@@ -0,0 +1,210 @@
+package carsharing.impementation;
+
+import carsharing.interfaces.DatabaseInterface;
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.CompanyStats;
+import carsharing.valueobjects.Customer;
+import carsharing.valueobjects.Page;
+import carsharing.valueobjects.PageCursor;
+import carsharing.valueobjects.Rental;
+import carsharing.valueobjects.Reservation;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Base class for DatabaseInterface decorators, forwards every call to the wrapped database.
+ * Subclasses override only the operations they change.
+ */
+public abstract class ForwardingDatabase implements DatabaseInterface {
+
+    protected final DatabaseInterface delegate;
+
+    protected ForwardingDatabase(final DatabaseInterface delegate) {
+        this.delegate = Objects.requireNonNull(delegate);
+    }
+
+    @Override
+    public Company addCompany(final Company company) {
+        return delegate.addCompany(company);
+    }
+
+    @Override
+    public Car addCar(final Car car) {
+        return delegate.addCar(car);
+    }
+
+    @Override
+    public Customer addCustomer(final Customer customer) {
+        return delegate.addCustomer(customer);
+    }
+
+    @Override
+    public List<Integer> addCompanies(final Iterable<Company> companies) {
+        return delegate.addCompanies(companies);
+    }
+
+    @Override
+    public List<Integer> addCars(final Iterable<Car> cars) {
+        return delegate.addCars(cars);
+    }
+
+    @Override
+    public List<Integer> addCustomers(final Iterable<Customer> customers) {
+        return delegate.addCustomers(customers);
+    }
+
+    @Override
+    public Integer rentCarToCustomer(final Car car, final Customer customer) {
+        return delegate.rentCarToCustomer(car, customer);
+    }
+
+    @Override
+    public boolean tryRent(final Car car, final Customer customer) {
+        return delegate.tryRent(car, customer);
+    }
+
+    @Override
+    public Integer returnRentedCar(final Customer customer) {
+        return delegate.returnRentedCar(customer);
+    }
+
+    @Override
+    public Car getCarById(final Integer id) {
+        return delegate.getCarById(id);
+    }
+
+    @Override
+    public Company getCompanyById(final Integer companyId) {
+        return delegate.getCompanyById(companyId);
+    }
+
+    @Override
+    public Customer getCustomerById(final Integer customerId) {
+        return delegate.getCustomerById(customerId);
+    }
+
+    @Override
+    public List<Car> getCarsByIds(final Collection<Integer> ids) {
+        return delegate.getCarsByIds(ids);
+    }
+
+    @Override
+    public List<Company> getCompaniesByIds(final Collection<Integer> companyIds) {
+        return delegate.getCompaniesByIds(companyIds);
+    }
+
+    @Override
+    public List<Company> getAllCompanies() {
+        return delegate.getAllCompanies();
+    }
+
+    @Override
+    public List<Car> getAllCars() {
+        return delegate.getAllCars();
+    }
+
+    @Override
+    public List<Car> getCompanyCars(final Company company) {
+        return delegate.getCompanyCars(company);
+    }
+
+    @Override
+    public List<Car> getAvailableCompanyCars(final Company company) {
+        return delegate.getAvailableCompanyCars(company);
+    }
+
+    @Override
+    public List<Customer> getAllCustomers() {
+        return delegate.getAllCustomers();
+    }
+
+    @Override
+    public Stream<Company> streamAllCompanies() {
+        return delegate.streamAllCompanies();
+    }
+
+    @Override
+    public Stream<Car> streamAllCars() {
+        return delegate.streamAllCars();
+    }
+
+    @Override
+    public Stream<Customer> streamAllCustomers() {
+        return delegate.streamAllCustomers();
+    }
+
+    @Override
+    public Page<Company> getCompanies(final PageCursor cursor, int pageSize) {
+        return delegate.getCompanies(cursor, pageSize);
+    }
+
+    @Override
+    public Page<Car> getCars(final PageCursor cursor, int pageSize) {
+        return delegate.getCars(cursor, pageSize);
+    }
+
+    @Override
+    public Page<Car> getCompanyCars(final Company company, final PageCursor cursor, int pageSize) {
+        return delegate.getCompanyCars(company, cursor, pageSize);
+    }
+
+    @Override
+    public Page<Customer> getCustomers(final PageCursor cursor, int pageSize) {
+        return delegate.getCustomers(cursor, pageSize);
+    }
+
+    @Override
+    public List<Customer> findCustomers(final String namePrefix, int limit) {
+        return delegate.findCustomers(namePrefix, limit);
+    }
+
+    @Override
+    public List<Rental> getCarRentals(final Car car, final Instant from, final Instant to) {
+        return delegate.getCarRentals(car, from, to);
+    }
+
+    @Override
+    public List<Rental> getActiveRentals(final Instant at) {
+        return delegate.getActiveRentals(at);
+    }
+
+    @Override
+    public CompanyStats getCompanyStats(final Company company) {
+        return delegate.getCompanyStats(company);
+    }
+
+    @Override
+    public List<CompanyStats> getAllCompanyStats() {
+        return delegate.getAllCompanyStats();
+    }
+
+    @Override
+    public Reservation reserveCar(final Car car, final Customer customer, final Instant start, final Instant end) {
+        return delegate.reserveCar(car, customer, start, end);
+    }
+
+    @Override
+    public boolean cancelReservation(final Reservation reservation) {
+        return delegate.cancelReservation(reservation);
+    }
+
+    @Override
+    public List<Reservation> getCustomerReservations(final Customer customer) {
+        return delegate.getCustomerReservations(customer);
+    }
+
+    @Override
+    public List<Reservation> getUpcomingReservations(final Instant after) {
+        return delegate.getUpcomingReservations(after);
+    }
+
+    @Override
+    public List<Car> getFreeCompanyCars(final Company company, final Instant from, final Instant to) {
+        return delegate.getFreeCompanyCars(company, from, to);
+    }
+}
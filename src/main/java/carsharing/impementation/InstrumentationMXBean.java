@@ -0,0 +1,43 @@
+package carsharing.impementation;
+
+import java.util.Map;
+
+/**
+ * JMX view of an InstrumentedDatabase, registered as carsharing:type=Instrumentation.
+ */
+public interface InstrumentationMXBean {
+
+    /**
+     * Calls per DatabaseInterface method.
+     */
+    Map<String, Long> getMethodCalls();
+
+    /**
+     * Failed calls per DatabaseInterface method.
+     */
+    Map<String, Long> getMethodErrors();
+
+    /**
+     * 99th percentile latency in microseconds per DatabaseInterface method.
+     */
+    Map<String, Long> getMethodP99Micros();
+
+    /**
+     * Executions per SQL statement.
+     */
+    Map<String, Long> getStatementCalls();
+
+    double getMeanConnectionAcquireMicros();
+
+    long getP99ConnectionAcquireMicros();
+
+    /**
+     * Returns every statistic as a text table.
+     */
+    String dump();
+
+    /**
+     * Forget everything recorded so far.
+     */
+    void reset();
+}
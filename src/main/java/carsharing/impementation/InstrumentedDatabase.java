@@ -0,0 +1,345 @@
+package carsharing.impementation;
+
+import carsharing.interfaces.DatabaseInterface;
+import carsharing.interfaces.QueryListener;
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.CompanyStats;
+import carsharing.valueobjects.Customer;
+import carsharing.valueobjects.Page;
+import carsharing.valueobjects.PageCursor;
+import carsharing.valueobjects.Rental;
+import carsharing.valueobjects.Reservation;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+/**
+ * DatabaseInterface decorator recording calls, errors, rows and latency of every method.
+ * Registered with Database.setQueryListener it also records the same per SQL statement,
+ * plus the time spent waiting for a pooled connection. Without it nothing is wrapped
+ * and the Database skips timing altogether.
+ */
+public class InstrumentedDatabase extends ForwardingDatabase implements QueryListener, InstrumentationMXBean {
+
+    private final static String objectName = "carsharing:type=Instrumentation";
+
+    private final Map<String, OperationStats> methodStats = new ConcurrentHashMap<>();
+    private final Map<String, OperationStats> statementStats = new ConcurrentHashMap<>();
+    private final OperationStats connectionAcquireStats = new OperationStats();
+
+    public InstrumentedDatabase(final DatabaseInterface delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Register this instance with the platform MBean server.
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(objectName));
+        } catch (JMException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Override
+    public void queryExecuted(final String sqlQuery, final Object[] params, long acquireNanos,
+                              long executeNanos, int rows, final Exception error) {
+        connectionAcquireStats.record(acquireNanos, -1, false);
+        statementStats.computeIfAbsent(sqlQuery, sql -> new OperationStats())
+                .record(executeNanos, rows, error != null);
+    }
+
+    @Override
+    public Map<String, Long> getMethodCalls() {
+        return _collect(methodStats, OperationStats::getCalls);
+    }
+
+    @Override
+    public Map<String, Long> getMethodErrors() {
+        return _collect(methodStats, OperationStats::getErrors);
+    }
+
+    @Override
+    public Map<String, Long> getMethodP99Micros() {
+        return _collect(methodStats, stats -> stats.getPercentileMicros(99.0));
+    }
+
+    @Override
+    public Map<String, Long> getStatementCalls() {
+        return _collect(statementStats, OperationStats::getCalls);
+    }
+
+    @Override
+    public double getMeanConnectionAcquireMicros() {
+        return connectionAcquireStats.getMeanMicros();
+    }
+
+    @Override
+    public long getP99ConnectionAcquireMicros() {
+        return connectionAcquireStats.getPercentileMicros(99.0);
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        _appendTable(text, "Method", methodStats);
+        _appendTable(text, "Statement", statementStats);
+        _appendTable(text, "Connection", Map.of("acquire", connectionAcquireStats));
+        return text.toString();
+    }
+
+    @Override
+    public void reset() {
+        methodStats.values().forEach(OperationStats::reset);
+        statementStats.values().forEach(OperationStats::reset);
+        connectionAcquireStats.reset();
+    }
+
+    @Override
+    public Company addCompany(final Company company) {
+        return _call("addCompany", () -> delegate.addCompany(company),
+                persisted -> persisted.getId() == -1 ? 0 : 1);
+    }
+
+    @Override
+    public Car addCar(final Car car) {
+        return _call("addCar", () -> delegate.addCar(car), persisted -> persisted.getId() == -1 ? 0 : 1);
+    }
+
+    @Override
+    public Customer addCustomer(final Customer customer) {
+        return _call("addCustomer", () -> delegate.addCustomer(customer),
+                persisted -> persisted.getId() == -1 ? 0 : 1);
+    }
+
+    @Override
+    public List<Integer> addCompanies(final Iterable<Company> companies) {
+        return _call("addCompanies", () -> delegate.addCompanies(companies), List::size);
+    }
+
+    @Override
+    public List<Integer> addCars(final Iterable<Car> cars) {
+        return _call("addCars", () -> delegate.addCars(cars), List::size);
+    }
+
+    @Override
+    public List<Integer> addCustomers(final Iterable<Customer> customers) {
+        return _call("addCustomers", () -> delegate.addCustomers(customers), List::size);
+    }
+
+    @Override
+    public Integer rentCarToCustomer(final Car car, final Customer customer) {
+        return _call("rentCarToCustomer", () -> delegate.rentCarToCustomer(car, customer), released -> 1);
+    }
+
+    @Override
+    public boolean tryRent(final Car car, final Customer customer) {
+        return _call("tryRent", () -> delegate.tryRent(car, customer), rented -> rented ? 1 : 0);
+    }
+
+    @Override
+    public Integer returnRentedCar(final Customer customer) {
+        return _call("returnRentedCar", () -> delegate.returnRentedCar(customer),
+                released -> released == null ? 0 : 1);
+    }
+
+    @Override
+    public Car getCarById(final Integer id) {
+        return _call("getCarById", () -> delegate.getCarById(id), found -> found.getId() == -1 ? 0 : 1);
+    }
+
+    @Override
+    public Company getCompanyById(final Integer companyId) {
+        return _call("getCompanyById", () -> delegate.getCompanyById(companyId),
+                found -> found.getId() == -1 ? 0 : 1);
+    }
+
+    @Override
+    public Customer getCustomerById(final Integer customerId) {
+        return _call("getCustomerById", () -> delegate.getCustomerById(customerId),
+                found -> found.getId() == -1 ? 0 : 1);
+    }
+
+    @Override
+    public List<Car> getCarsByIds(final Collection<Integer> ids) {
+        return _call("getCarsByIds", () -> delegate.getCarsByIds(ids), List::size);
+    }
+
+    @Override
+    public List<Company> getCompaniesByIds(final Collection<Integer> companyIds) {
+        return _call("getCompaniesByIds", () -> delegate.getCompaniesByIds(companyIds), List::size);
+    }
+
+    @Override
+    public List<Company> getAllCompanies() {
+        return _call("getAllCompanies", () -> delegate.getAllCompanies(), List::size);
+    }
+
+    @Override
+    public List<Car> getAllCars() {
+        return _call("getAllCars", () -> delegate.getAllCars(), List::size);
+    }
+
+    @Override
+    public List<Car> getCompanyCars(final Company company) {
+        return _call("getCompanyCars", () -> delegate.getCompanyCars(company), List::size);
+    }
+
+    @Override
+    public List<Car> getAvailableCompanyCars(final Company company) {
+        return _call("getAvailableCompanyCars", () -> delegate.getAvailableCompanyCars(company),
+                List::size);
+    }
+
+    @Override
+    public List<Customer> getAllCustomers() {
+        return _call("getAllCustomers", () -> delegate.getAllCustomers(), List::size);
+    }
+
+    @Override
+    public Stream<Company> streamAllCompanies() {
+        return _stream("streamAllCompanies", () -> delegate.streamAllCompanies());
+    }
+
+    @Override
+    public Stream<Car> streamAllCars() {
+        return _stream("streamAllCars", () -> delegate.streamAllCars());
+    }
+
+    @Override
+    public Stream<Customer> streamAllCustomers() {
+        return _stream("streamAllCustomers", () -> delegate.streamAllCustomers());
+    }
+
+    @Override
+    public Page<Company> getCompanies(final PageCursor cursor, int pageSize) {
+        return _call("getCompanies", () -> delegate.getCompanies(cursor, pageSize),
+                page -> page.getItems().size());
+    }
+
+    @Override
+    public Page<Car> getCars(final PageCursor cursor, int pageSize) {
+        return _call("getCars", () -> delegate.getCars(cursor, pageSize),
+                page -> page.getItems().size());
+    }
+
+    @Override
+    public Page<Car> getCompanyCars(final Company company, final PageCursor cursor, int pageSize) {
+        return _call("getCompanyCarsPage", () -> delegate.getCompanyCars(company, cursor, pageSize),
+                page -> page.getItems().size());
+    }
+
+    @Override
+    public Page<Customer> getCustomers(final PageCursor cursor, int pageSize) {
+        return _call("getCustomers", () -> delegate.getCustomers(cursor, pageSize),
+                page -> page.getItems().size());
+    }
+
+    @Override
+    public List<Customer> findCustomers(final String namePrefix, int limit) {
+        return _call("findCustomers", () -> delegate.findCustomers(namePrefix, limit), List::size);
+    }
+
+    @Override
+    public List<Rental> getCarRentals(final Car car, final Instant from, final Instant to) {
+        return _call("getCarRentals", () -> delegate.getCarRentals(car, from, to), List::size);
+    }
+
+    @Override
+    public List<Rental> getActiveRentals(final Instant at) {
+        return _call("getActiveRentals", () -> delegate.getActiveRentals(at), List::size);
+    }
+
+    @Override
+    public CompanyStats getCompanyStats(final Company company) {
+        return _call("getCompanyStats", () -> delegate.getCompanyStats(company), stats -> 1);
+    }
+
+    @Override
+    public List<CompanyStats> getAllCompanyStats() {
+        return _call("getAllCompanyStats", delegate::getAllCompanyStats, List::size);
+    }
+
+    @Override
+    public Reservation reserveCar(final Car car, final Customer customer, final Instant start, final Instant end) {
+        return _call("reserveCar", () -> delegate.reserveCar(car, customer, start, end),
+                reservation -> reservation.getId() == -1 ? 0 : 1);
+    }
+
+    @Override
+    public boolean cancelReservation(final Reservation reservation) {
+        return _call("cancelReservation", () -> delegate.cancelReservation(reservation),
+                cancelled -> cancelled ? 1 : 0);
+    }
+
+    @Override
+    public List<Reservation> getCustomerReservations(final Customer customer) {
+        return _call("getCustomerReservations", () -> delegate.getCustomerReservations(customer), List::size);
+    }
+
+    @Override
+    public List<Reservation> getUpcomingReservations(final Instant after) {
+        return _call("getUpcomingReservations", () -> delegate.getUpcomingReservations(after), List::size);
+    }
+
+    @Override
+    public List<Car> getFreeCompanyCars(final Company company, final Instant from, final Instant to) {
+        return _call("getFreeCompanyCars", () -> delegate.getFreeCompanyCars(company, from, to), List::size);
+    }
+
+    // UTILITY METHODS --------------------------------------------------------
+
+    private <T> T _call(final String method, final Supplier<T> call, final ToIntFunction<T> rowCount) {
+        OperationStats stats = methodStats.computeIfAbsent(method, name -> new OperationStats());
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException ex) {
+            stats.record(System.nanoTime() - start, -1, true);
+            throw ex;
+        }
+        stats.record(System.nanoTime() - start, rowCount.applyAsInt(result), false);
+        return result;
+    }
+
+    /**
+     * Times opening the stream; rows are counted as the caller consumes them.
+     */
+    private <T> Stream<T> _stream(final String method, final Supplier<Stream<T>> call) {
+        Stream<T> stream = _call(method, call, opened -> -1);
+        OperationStats stats = methodStats.get(method);
+        return stream.peek(row -> stats.addRows(1));
+    }
+
+    private static Map<String, Long> _collect(final Map<String, OperationStats> stats,
+                                              final Function<OperationStats, Long> value) {
+        Map<String, Long> values = new TreeMap<>();
+        stats.forEach((name, operationStats) -> values.put(name, value.apply(operationStats)));
+        return values;
+    }
+
+    private static void _appendTable(final StringBuilder text, final String title,
+                                     final Map<String, OperationStats> stats) {
+        text.append(String.format("%-10s %10s %8s %12s %10s %10s %10s %10s  %s\n",
+                title, "calls", "errors", "rows", "mean us", "p50 us", "p99 us", "max us", "name"));
+        new TreeMap<>(stats).forEach((name, operationStats) -> text.append(String.format(
+                "%-10s %10d %8d %12d %10.1f %10d %10d %10d  %s\n", "",
+                operationStats.getCalls(), operationStats.getErrors(), operationStats.getRows(),
+                operationStats.getMeanMicros(), operationStats.getPercentileMicros(50.0),
+                operationStats.getPercentileMicros(99.0), operationStats.getMaxMicros(), name)));
+    }
+}
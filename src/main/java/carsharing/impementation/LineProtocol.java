@@ -0,0 +1,361 @@
+package carsharing.impementation;
+
+import carsharing.interfaces.DatabaseInterface;
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.CompanyStats;
+import carsharing.valueobjects.Customer;
+import carsharing.valueobjects.Page;
+import carsharing.valueobjects.PageCursor;
+import carsharing.valueobjects.Rental;
+import carsharing.valueobjects.Reservation;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Text protocol of the network service, one command per line.
+ * Replies start with "OK" or "ERR &lt;message&gt;"; list replies are "OK &lt;count&gt;"
+ * followed by count tab-separated rows. Times are ISO-8601 instants, e.g. 2026-01-31T10:00:00Z;
+ * a running rental shows "-" as its end.
+ * <pre>
+ * COMPANIES                              list companies
+ * CARS &lt;companyId&gt;                       list cars of a company
+ * AVAILABLE &lt;companyId&gt;                  list free cars of a company
+ * FREE &lt;companyId&gt; &lt;from&gt; &lt;to&gt;           list cars of a company neither rented nor booked in a window
+ * CUSTOMERS [afterId] [limit]            list one page of customers
+ * FIND &lt;namePrefix&gt;                      list customers whose name starts with the prefix
+ * RENTED &lt;customerId&gt;                    show the customer's rented car
+ * RENT &lt;customerId&gt; &lt;carId&gt;              rent a car
+ * RETURN &lt;customerId&gt;                    return the rented car
+ * CAR_RENTALS &lt;carId&gt; &lt;from&gt; &lt;to&gt;       list rentals of a car overlapping a window
+ * ACTIVE_RENTALS [at]                    list rentals running at a time, now by default
+ * COMPANY_STATS [companyId]              show fleet utilisation of one or all companies
+ * RESERVE &lt;customerId&gt; &lt;carId&gt; &lt;start&gt; &lt;end&gt;  book a car, replies with the booking id
+ * CANCEL &lt;customerId&gt; &lt;reservationId&gt;   cancel a booking of the customer
+ * RESERVATIONS &lt;customerId&gt;              list bookings of a customer
+ * UPCOMING [after]                       list bookings ending after a time, now by default
+ * ADD_COMPANY &lt;name&gt;                     create a company, replies with its id
+ * ADD_CAR &lt;companyId&gt; &lt;name&gt;             create a car, replies with its id
+ * ADD_CUSTOMER &lt;name&gt;                    create a customer, replies with its id
+ * STATS                                  dump latency statistics, needs an InstrumentedDatabase
+ * QUIT                                   close the connection
+ * </pre>
+ */
+class LineProtocol {
+
+    private final static int defaultPageSize = 100;
+    private final static int maxPageSize = 1_000;
+    private final DatabaseInterface database;
+
+    LineProtocol(final DatabaseInterface database) {
+        this.database = Objects.requireNonNull(database);
+    }
+
+    static boolean isQuit(final String line) {
+        return line.trim().equalsIgnoreCase("QUIT");
+    }
+
+    /**
+     * Run one command line and return the full reply, ending with a newline.
+     * @param line Command line without the line terminator.
+     * @return Reply text.
+     */
+    String handle(final String line) {
+
+        String[] parts = line.trim().split("\\s+", 2);
+        String command = parts[0].toUpperCase();
+        String arguments = parts.length > 1 ? parts[1].trim() : "";
+        try {
+            switch (command) {
+                case "COMPANIES":
+                    return _listCompanies(database.getAllCompanies());
+                case "CARS":
+                    return _listCars(database.getCompanyCars(_requireCompany(arguments)));
+                case "AVAILABLE":
+                    return _listCars(database.getAvailableCompanyCars(_requireCompany(arguments)));
+                case "FREE":
+                    return _free(arguments);
+                case "CUSTOMERS":
+                    return _listCustomers(arguments);
+                case "FIND":
+                    return _listCustomers(database.findCustomers(arguments, defaultPageSize));
+                case "RENTED":
+                    return _rented(_requireCustomer(arguments));
+                case "RENT":
+                    return _rent(arguments);
+                case "RETURN":
+                    return _return(_requireCustomer(arguments));
+                case "CAR_RENTALS":
+                    return _carRentals(arguments);
+                case "ACTIVE_RENTALS":
+                    return _listRentals(database.getActiveRentals(_parseTimeOrNow(arguments)));
+                case "COMPANY_STATS":
+                    return _listStats(arguments.isEmpty() ? database.getAllCompanyStats()
+                            : Collections.singletonList(database.getCompanyStats(_requireCompany(arguments))));
+                case "RESERVE":
+                    return _reserve(arguments);
+                case "CANCEL":
+                    return _cancel(arguments);
+                case "RESERVATIONS":
+                    return _listReservations(database.getCustomerReservations(_requireCustomer(arguments)));
+                case "UPCOMING":
+                    return _listReservations(database.getUpcomingReservations(_parseTimeOrNow(arguments)));
+                case "ADD_COMPANY":
+                    return "OK " + database.addCompany(new Company(0, _requireName(arguments))).getId() + "\n";
+                case "ADD_CAR":
+                    return _addCar(arguments);
+                case "ADD_CUSTOMER":
+                    return "OK " + database.addCustomer(new Customer(0, null, _requireName(arguments))).getId() + "\n";
+                case "STATS":
+                    return _stats();
+                case "QUIT":
+                    return "OK bye\n";
+                default:
+                    return _error("unknown command '" + parts[0] + "'");
+            }
+        } catch (IllegalArgumentException ex) {
+            return _error(ex.getMessage());
+        } catch (RuntimeException ex) {
+            return _error("internal error: " + ex.getMessage());
+        }
+    }
+
+    // COMMANDS ---------------------------------------------------------------
+
+    private String _stats() {
+        if (!(database instanceof InstrumentationMXBean)) {
+            return _error("instrumentation is disabled");
+        }
+        String[] lines = ((InstrumentationMXBean) database).dump().split("\n");
+        return "OK " + lines.length + "\n" + String.join("\n", lines) + "\n";
+    }
+
+    private String _listCompanies(final List<Company> companies) {
+        StringBuilder reply = new StringBuilder("OK ").append(companies.size()).append('\n');
+        for (Company company : companies) {
+            reply.append(company.getId()).append('\t').append(company.getName()).append('\n');
+        }
+        return reply.toString();
+    }
+
+    private String _listCars(final List<Car> cars) {
+        StringBuilder reply = new StringBuilder("OK ").append(cars.size()).append('\n');
+        for (Car car : cars) {
+            reply.append(car.getId()).append('\t')
+                    .append(car.getCompanyId()).append('\t')
+                    .append(car.getName()).append('\n');
+        }
+        return reply.toString();
+    }
+
+    private String _listCustomers(final String arguments) {
+        String[] parts = arguments.isEmpty() ? new String[0] : arguments.split("\\s+");
+        PageCursor cursor = parts.length > 0 ? PageCursor.after(_parseId(parts[0])) : PageCursor.first();
+        int pageSize = parts.length > 1 ? _parseId(parts[1]) : defaultPageSize;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxPageSize);
+        }
+        Page<Customer> page = database.getCustomers(cursor, pageSize);
+        return _listCustomers(page.getItems());
+    }
+
+    private String _listCustomers(final List<Customer> customers) {
+        StringBuilder reply = new StringBuilder("OK ").append(customers.size()).append('\n');
+        for (Customer customer : customers) {
+            reply.append(customer.getId()).append('\t')
+                    .append(customer.getRentedCarId() == null ? "-" : customer.getRentedCarId()).append('\t')
+                    .append(customer.getName()).append('\n');
+        }
+        return reply.toString();
+    }
+
+    private String _rented(final Customer customer) {
+        if (customer.getRentedCarId() == null) {
+            return _error("no rented car");
+        }
+        Car car = database.getCarById(customer.getRentedCarId());
+        Company company = database.getCompanyById(car.getCompanyId());
+        return String.format("OK %d\t%s\t%s\n", car.getId(), car.getName(), company.getName());
+    }
+
+    private String _rent(final String arguments) {
+        String[] parts = arguments.split("\\s+");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("usage: RENT <customerId> <carId>");
+        }
+        Customer customer = _requireCustomer(parts[0]);
+        if (customer.getRentedCarId() != null) {
+            return _error("customer already rented a car");
+        }
+        Car car = database.getCarById(_parseId(parts[1]));
+        if (car.getId() == -1) {
+            return _error("unknown car " + parts[1]);
+        }
+        if (!database.tryRent(car, customer)) {
+            return _error("car is not available");
+        }
+        return "OK\n";
+    }
+
+    private String _return(final Customer customer) {
+        if (customer.getRentedCarId() == null) {
+            return _error("no rented car");
+        }
+        database.returnRentedCar(customer);
+        return "OK\n";
+    }
+
+    private String _free(final String arguments) {
+        String[] parts = arguments.split("\\s+");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("usage: FREE <companyId> <from> <to>");
+        }
+        Company company = _requireCompany(parts[0]);
+        return _listCars(database.getFreeCompanyCars(company, _parseTime(parts[1]), _parseTime(parts[2])));
+    }
+
+    private String _carRentals(final String arguments) {
+        String[] parts = arguments.split("\\s+");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("usage: CAR_RENTALS <carId> <from> <to>");
+        }
+        Car car = _requireCar(parts[0]);
+        return _listRentals(database.getCarRentals(car, _parseTime(parts[1]), _parseTime(parts[2])));
+    }
+
+    private String _listRentals(final List<Rental> rentals) {
+        StringBuilder reply = new StringBuilder("OK ").append(rentals.size()).append('\n');
+        for (Rental rental : rentals) {
+            reply.append(rental.getId()).append('\t')
+                    .append(rental.getCustomerId()).append('\t')
+                    .append(rental.getCarId()).append('\t')
+                    .append(rental.getCompanyId()).append('\t')
+                    .append(rental.getStart()).append('\t')
+                    .append(rental.isActive() ? "-" : rental.getEnd()).append('\n');
+        }
+        return reply.toString();
+    }
+
+    private String _listStats(final List<CompanyStats> stats) {
+        StringBuilder reply = new StringBuilder("OK ").append(stats.size()).append('\n');
+        for (CompanyStats companyStats : stats) {
+            reply.append(companyStats.getCompanyId()).append('\t')
+                    .append(companyStats.getTotalCars()).append('\t')
+                    .append(companyStats.getRentedCars()).append('\t')
+                    .append(companyStats.getCompanyName()).append('\n');
+        }
+        return reply.toString();
+    }
+
+    private String _reserve(final String arguments) {
+        String[] parts = arguments.split("\\s+");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("usage: RESERVE <customerId> <carId> <start> <end>");
+        }
+        Customer customer = _requireCustomer(parts[0]);
+        Car car = _requireCar(parts[1]);
+        Reservation reservation = database.reserveCar(car, customer, _parseTime(parts[2]), _parseTime(parts[3]));
+        if (reservation.getId() == -1) {
+            return _error("car is not free in that window");
+        }
+        return "OK " + reservation.getId() + "\n";
+    }
+
+    private String _cancel(final String arguments) {
+        String[] parts = arguments.split("\\s+");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("usage: CANCEL <customerId> <reservationId>");
+        }
+        Customer customer = _requireCustomer(parts[0]);
+        long reservationId = _parseId(parts[1]);
+        for (Reservation reservation : database.getCustomerReservations(customer)) {
+            if (reservation.getId() == reservationId && database.cancelReservation(reservation)) {
+                return "OK\n";
+            }
+        }
+        return _error("unknown reservation " + parts[1]);
+    }
+
+    private String _listReservations(final List<Reservation> reservations) {
+        StringBuilder reply = new StringBuilder("OK ").append(reservations.size()).append('\n');
+        for (Reservation reservation : reservations) {
+            reply.append(reservation.getId()).append('\t')
+                    .append(reservation.getCustomerId()).append('\t')
+                    .append(reservation.getCarId()).append('\t')
+                    .append(reservation.getStart()).append('\t')
+                    .append(reservation.getEnd()).append('\n');
+        }
+        return reply.toString();
+    }
+
+    private String _addCar(final String arguments) {
+        String[] parts = arguments.split("\\s+", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("usage: ADD_CAR <companyId> <name>");
+        }
+        Company company = _requireCompany(parts[0]);
+        Car car = database.addCar(new Car(0, company.getId(), _requireName(parts[1])));
+        return "OK " + car.getId() + "\n";
+    }
+
+    // UTILITY METHODS --------------------------------------------------------
+
+    private Company _requireCompany(final String argument) {
+        Company company = database.getCompanyById(_parseId(argument));
+        if (company.getId() == -1) {
+            throw new IllegalArgumentException("unknown company " + argument);
+        }
+        return company;
+    }
+
+    private Car _requireCar(final String argument) {
+        Car car = database.getCarById(_parseId(argument));
+        if (car.getId() == -1) {
+            throw new IllegalArgumentException("unknown car " + argument);
+        }
+        return car;
+    }
+
+    private Customer _requireCustomer(final String argument) {
+        Customer customer = database.getCustomerById(_parseId(argument));
+        if (customer.getId() == -1) {
+            throw new IllegalArgumentException("unknown customer " + argument);
+        }
+        return customer;
+    }
+
+    private static int _parseId(final String argument) {
+        try {
+            return Integer.parseInt(argument.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("not a number: '" + argument + "'");
+        }
+    }
+
+    private static Instant _parseTime(final String argument) {
+        try {
+            return Instant.parse(argument);
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("not an ISO-8601 instant: '" + argument + "'");
+        }
+    }
+
+    private static Instant _parseTimeOrNow(final String argument) {
+        return argument.isEmpty() ? Instant.now() : _parseTime(argument);
+    }
+
+    private static String _requireName(final String name) {
+        if (name.isBlank()) {
+            throw new IllegalArgumentException("name can't be empty");
+        }
+        return name.trim();
+    }
+
+    private static String _error(final String message) {
+        return "ERR " + message.replace('\n', ' ') + "\n";
+    }
+}
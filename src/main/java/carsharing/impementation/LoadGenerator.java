@@ -0,0 +1,286 @@
+package carsharing.impementation;
+
+import carsharing.interfaces.DatabaseInterface;
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.Customer;
+import carsharing.valueobjects.PageCursor;
+import org.HdrHistogram.Histogram;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a DatabaseInterface with simulated customers following the DbManagerService rental flow:
+ * log in, list companies, list the free cars of one, rent one, look at it, hold it, return it.
+ * Flows are started on a fixed schedule when a target rate is set, and flow latency is measured
+ * from the scheduled start, so a stalled database shows up in the percentiles instead of
+ * silently lowering the load.
+ * Every run adds its customers for good, so it refuses to start unless LoadGeneratorConfig.keepCustomers
+ * is set.
+ */
+public class LoadGenerator {
+
+    private final static long reportIntervalNanos = 1_000_000_000L;
+    private final static int loginPageSize = 20;
+    private final static int histogramDigits = 3;
+
+    /**
+     * Timed steps of a rental flow.
+     */
+    public enum Operation {
+        LOGIN, LIST_COMPANIES, LIST_CARS, RENT, RENTED_CAR, RETURN, FLOW
+    }
+
+    private final DatabaseInterface database;
+    private final LoadGeneratorConfig config;
+    private final PrintStream out;
+    private final AtomicLong nextStart = new AtomicLong();
+    private final AtomicLong flows = new AtomicLong();
+    private final AtomicLong rentAttempts = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong noCarAvailable = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private long startNanos;
+    private long endNanos;
+    private long intervalNanos;
+
+    public LoadGenerator(final DatabaseInterface database, final LoadGeneratorConfig config,
+                         final PrintStream out) {
+        this.database = Objects.requireNonNull(database);
+        this.config = Objects.requireNonNull(config);
+        this.out = Objects.requireNonNull(out);
+    }
+
+    /**
+     * Create the simulated customers, run the load for the configured duration and print the report.
+     * @return Latency histograms in microseconds, one per operation.
+     * @throws FileNotFoundException If the histogram file can't be written.
+     */
+    public Map<Operation, Histogram> run() throws FileNotFoundException {
+
+        if (!config.isKeepCustomers()) {
+            throw new IllegalStateException(String.format(
+                    "Load test would leave %d customers in the database, use in-memory storage "
+                            + "or set keepCustomers (-loadKeepCustomers)",
+                    config.getCustomers()));
+        }
+        List<Company> companies = database.getAllCompanies();
+        if (companies.isEmpty()) {
+            throw new IllegalStateException("No companies to rent from, import a fleet first");
+        }
+        List<Integer> customerIds = _createCustomers();
+
+        intervalNanos = config.getTargetFlowsPerSecond() == 0 ? 0
+                : (long) (1_000_000_000L / config.getTargetFlowsPerSecond());
+        startNanos = System.nanoTime();
+        endNanos = startNanos + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+        nextStart.set(startNanos);
+
+        List<Map<Operation, Histogram>> workerHistograms = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < customerIds.size(); ++i) {
+            Map<Operation, Histogram> histograms = _newHistograms();
+            workerHistograms.add(histograms);
+            int customerId = customerIds.get(i);
+            Random random = new Random(config.getSeed() + i);
+            Thread worker = new Thread(() -> _simulate(customerId, companies, random, histograms),
+                    "carsharing-load-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+        workers.forEach(Thread::start);
+        _awaitWorkers(workers);
+
+        Map<Operation, Histogram> total = _newHistograms();
+        for (Map<Operation, Histogram> histograms : workerHistograms) {
+            histograms.forEach((operation, histogram) -> total.get(operation).add(histogram));
+        }
+        _report(total, System.nanoTime() - startNanos);
+        if (config.getHistogramFile() != null) {
+            _writeHistograms(total);
+        }
+        return total;
+    }
+
+    // UTILITY METHODS --------------------------------------------------------
+
+    private List<Integer> _createCustomers() {
+        String prefix = "load-" + System.currentTimeMillis() + "-";
+        List<Customer> customers = new ArrayList<>(config.getCustomers());
+        for (int i = 0; i < config.getCustomers(); ++i) {
+            customers.add(new Customer(0, null, prefix + i));
+        }
+        return database.addCustomers(customers);
+    }
+
+    private static Map<Operation, Histogram> _newHistograms() {
+        Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, new Histogram(histogramDigits));
+        }
+        return histograms;
+    }
+
+    /**
+     * Returns the scheduled start of the next flow, waiting for it, or -1 once the run is over.
+     */
+    private long _awaitNextStart() {
+        long scheduled = intervalNanos == 0 ? System.nanoTime() : nextStart.getAndAdd(intervalNanos);
+        if (scheduled >= endNanos) {
+            return -1;
+        }
+        long delay;
+        while ((delay = scheduled - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(delay);
+        }
+        return scheduled;
+    }
+
+    /**
+     * Worker thread: run rental flows as one customer until the run is over.
+     */
+    private void _simulate(int customerId, final List<Company> companies, final Random random,
+                           final Map<Operation, Histogram> histograms) {
+
+        long scheduled;
+        while ((scheduled = _awaitNextStart()) != -1) {
+            try {
+                _runFlow(customerId, companies, random, histograms);
+                flows.incrementAndGet();
+            } catch (RuntimeException ex) {
+                errors.incrementAndGet();
+            }
+            _record(histograms, Operation.FLOW, scheduled);
+        }
+    }
+
+    private void _runFlow(int customerId, final List<Company> companies, final Random random,
+                          final Map<Operation, Histogram> histograms) {
+
+        long start = System.nanoTime();
+        database.getCustomers(PageCursor.first(), loginPageSize);
+        Customer customer = database.getCustomerById(customerId);
+        _record(histograms, Operation.LOGIN, start);
+        if (customer.getRentedCarId() != null) {
+            database.returnRentedCar(customer);
+            customer.setRentedCarId(null);
+        }
+
+        start = System.nanoTime();
+        database.getAllCompanies();
+        _record(histograms, Operation.LIST_COMPANIES, start);
+        Company company = companies.get(random.nextInt(companies.size()));
+
+        Car rentedCar = null;
+        for (int attempt = 0; attempt < config.getMaxRentAttempts() && rentedCar == null; ++attempt) {
+            start = System.nanoTime();
+            List<Car> cars = database.getAvailableCompanyCars(company);
+            _record(histograms, Operation.LIST_CARS, start);
+            if (cars.isEmpty()) {
+                noCarAvailable.incrementAndGet();
+                return;
+            }
+            Car car = cars.get(random.nextInt(cars.size()));
+            start = System.nanoTime();
+            boolean rented = database.tryRent(car, customer);
+            _record(histograms, Operation.RENT, start);
+            rentAttempts.incrementAndGet();
+            if (rented) {
+                rentedCar = car;
+            } else {
+                conflicts.incrementAndGet();
+            }
+        }
+        if (rentedCar == null) {
+            return;
+        }
+        customer.setRentedCarId(rentedCar.getId());
+
+        start = System.nanoTime();
+        Car car = database.getCarById(rentedCar.getId());
+        database.getCompanyById(car.getCompanyId());
+        _record(histograms, Operation.RENTED_CAR, start);
+
+        if (config.getHoldMillis() > 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(config.getHoldMillis()));
+        }
+
+        start = System.nanoTime();
+        database.returnRentedCar(customer);
+        _record(histograms, Operation.RETURN, start);
+    }
+
+    private static void _record(final Map<Operation, Histogram> histograms,
+                                final Operation operation, long startNanos) {
+        histograms.get(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    private void _awaitWorkers(final List<Thread> workers) {
+        long lastFlows = 0;
+        long nextReport = startNanos + reportIntervalNanos;
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                try {
+                    worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextReport - System.nanoTime())));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (System.nanoTime() >= nextReport) {
+                    long currentFlows = flows.get();
+                    out.printf("%6.1fs  %d flows/s  %d conflicts  %d errors\n",
+                            (nextReport - startNanos) / 1e9, currentFlows - lastFlows,
+                            conflicts.get(), errors.get());
+                    lastFlows = currentFlows;
+                    nextReport += reportIntervalNanos;
+                }
+            }
+        }
+    }
+
+    private void _report(final Map<Operation, Histogram> histograms, long elapsedNanos) {
+
+        double seconds = elapsedNanos / 1e9;
+        out.printf("\n%d customers, %.1f s, target %s\n", config.getCustomers(), seconds,
+                intervalNanos == 0 ? "unthrottled" : config.getTargetFlowsPerSecond() + " flows/s");
+        out.printf("Flows: %d (%.1f/s), errors %d, no car available %d\n",
+                flows.get(), flows.get() / seconds, errors.get(), noCarAvailable.get());
+        out.printf("Rent attempts: %d, conflicts %d (%.2f%%)\n", rentAttempts.get(), conflicts.get(),
+                rentAttempts.get() == 0 ? 0.0 : 100.0 * conflicts.get() / rentAttempts.get());
+        out.printf("%-15s %10s %10s %10s %10s %10s %10s\n",
+                "operation", "count", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            out.printf("%-15s %10d %10.1f %10.3f %10.3f %10.3f %10.3f\n",
+                    entry.getKey(), histogram.getTotalCount(), histogram.getTotalCount() / seconds,
+                    histogram.getValueAtPercentile(50.0) / 1e3,
+                    histogram.getValueAtPercentile(99.0) / 1e3,
+                    histogram.getValueAtPercentile(99.9) / 1e3,
+                    histogram.getMaxValue() / 1e3);
+        }
+    }
+
+    /**
+     * Write every histogram as an HdrHistogram percentile distribution in milliseconds.
+     */
+    private void _writeHistograms(final Map<Operation, Histogram> histograms) throws FileNotFoundException {
+        try (PrintStream file = new PrintStream(config.getHistogramFile())) {
+            for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+                file.printf("# %s\n", entry.getKey());
+                entry.getValue().outputPercentileDistribution(file, 1e3);
+                file.println();
+            }
+        }
+        out.printf("Histograms written to %s\n", config.getHistogramFile());
+    }
+}
@@ -0,0 +1,125 @@
+package carsharing.impementation;
+
+/**
+ * Settings of a LoadGenerator run.
+ */
+public class LoadGeneratorConfig {
+
+    private int customers = 100;
+    private long durationSeconds = 30;
+    private double targetFlowsPerSecond = 0;
+    private long holdMillis = 50;
+    private int maxRentAttempts = 3;
+    private long seed = 42;
+    private String histogramFile;
+    private boolean keepCustomers;
+
+    /**
+     * Number of simulated customers, each one runs on its own thread.
+     */
+    public int getCustomers() {
+        return customers;
+    }
+
+    public LoadGeneratorConfig setCustomers(int customers) {
+        if (customers < 1) {
+            throw new IllegalArgumentException("Customer count must be positive: " + customers);
+        }
+        this.customers = customers;
+        return this;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public LoadGeneratorConfig setDurationSeconds(long durationSeconds) {
+        if (durationSeconds < 1) {
+            throw new IllegalArgumentException("Duration must be positive: " + durationSeconds);
+        }
+        this.durationSeconds = durationSeconds;
+        return this;
+    }
+
+    /**
+     * Rental flows started per second over all customers (0 starts them as fast as customers free up).
+     */
+    public double getTargetFlowsPerSecond() {
+        return targetFlowsPerSecond;
+    }
+
+    public LoadGeneratorConfig setTargetFlowsPerSecond(double targetFlowsPerSecond) {
+        if (targetFlowsPerSecond < 0) {
+            throw new IllegalArgumentException("Rate can't be negative: " + targetFlowsPerSecond);
+        }
+        this.targetFlowsPerSecond = targetFlowsPerSecond;
+        return this;
+    }
+
+    /**
+     * How long a customer keeps the rented car before returning it.
+     */
+    public long getHoldMillis() {
+        return holdMillis;
+    }
+
+    public LoadGeneratorConfig setHoldMillis(long holdMillis) {
+        if (holdMillis < 0) {
+            throw new IllegalArgumentException("Hold time can't be negative: " + holdMillis);
+        }
+        this.holdMillis = holdMillis;
+        return this;
+    }
+
+    /**
+     * Cars a customer tries before giving up when others keep renting them first.
+     */
+    public int getMaxRentAttempts() {
+        return maxRentAttempts;
+    }
+
+    public LoadGeneratorConfig setMaxRentAttempts(int maxRentAttempts) {
+        if (maxRentAttempts < 1) {
+            throw new IllegalArgumentException("Attempts must be positive: " + maxRentAttempts);
+        }
+        this.maxRentAttempts = maxRentAttempts;
+        return this;
+    }
+
+    /**
+     * Seed of the random choices, runs with the same seed pick the same companies and cars.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    public LoadGeneratorConfig setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * File receiving the full HdrHistogram percentile distributions, or null for none.
+     */
+    public String getHistogramFile() {
+        return histogramFile;
+    }
+
+    public LoadGeneratorConfig setHistogramFile(final String histogramFile) {
+        this.histogramFile = histogramFile;
+        return this;
+    }
+
+    /**
+     * Whether the run may leave its simulated customers in the database. DatabaseInterface
+     * can't delete customers, so runs against persistent storage have to opt in.
+     */
+    public boolean isKeepCustomers() {
+        return keepCustomers;
+    }
+
+    public LoadGeneratorConfig setKeepCustomers(boolean keepCustomers) {
+        this.keepCustomers = keepCustomers;
+        return this;
+    }
+}
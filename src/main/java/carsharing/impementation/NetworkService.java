@@ -0,0 +1,282 @@
+package carsharing.impementation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the LineProtocol over TCP.
+ * One selector thread multiplexes every client socket; commands run on the worker pool of an
+ * AsyncDatabase, so thousands of idle or slow clients cost no threads.
+ * Commands of one client are executed and answered in the order they were sent. When the
+ * AsyncDatabase has asyncMaxInFlight calls queued or running, further commands are answered
+ * with "ERR busy" instead of piling up behind them.
+ */
+public class NetworkService implements AutoCloseable {
+
+    private final static int readBufferSize = 4096;
+    private final static int maxLineLength = 8192;
+    private final static int maxPendingCommands = 64;
+
+    private final LineProtocol protocol;
+    private final InetSocketAddress address;
+    private final AsyncDatabase workers;
+    private final Queue<Session> sessionsToUpdate = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger clientCount = new AtomicInteger();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(readBufferSize);
+    private Selector selector;
+    private volatile boolean running;
+
+    /**
+     * One connected client: its socket, partially read line and queued replies.
+     */
+    private class Session {
+
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pendingCommands = new AtomicInteger();
+        CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        volatile boolean closeAfterWrite;
+        // Set when the client broke the protocol, no more commands are read. Selector thread only.
+        boolean readClosed;
+
+        Session(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * Queue a command behind the previous ones of this client. Selector thread only.
+         */
+        void submit(final String command) {
+            pendingCommands.incrementAndGet();
+            boolean quit = LineProtocol.isQuit(command);
+            tail = tail.thenCompose(previous -> workers.submit(() -> protocol.handle(command)))
+                    .exceptionally(NetworkService::_errorReply)
+                    .thenAccept(reply -> {
+                        pendingCommands.decrementAndGet();
+                        queueReply(reply, quit);
+                    });
+        }
+
+        /**
+         * Stop reading and answer with an error once the commands already queued are answered,
+         * then close. Selector thread only.
+         */
+        void fail(final String error) {
+            readClosed = true;
+            tail = tail.thenRun(() -> queueReply(error, true));
+        }
+
+        /**
+         * Queue a reply and have the selector thread write it. Worker threads.
+         * @param close true to close the connection once the reply is written.
+         */
+        void queueReply(final String reply, boolean close) {
+            outbound.add(ByteBuffer.wrap(reply.getBytes(StandardCharsets.UTF_8)));
+            // Only after the reply is queued, or the selector may close before writing it.
+            if (close) {
+                closeAfterWrite = true;
+            }
+            sessionsToUpdate.add(this);
+            selector.wakeup();
+        }
+
+        /**
+         * Read while there is room for more commands, write while replies are queued.
+         * Selector thread only.
+         */
+        void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            int ops = 0;
+            if (!readClosed && !closeAfterWrite && pendingCommands.get() < maxPendingCommands) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!outbound.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+    }
+
+    /**
+     * @param database Runs the commands; its owner closes it after this service.
+     * @param address Address to listen on.
+     */
+    public NetworkService(final AsyncDatabase database, final InetSocketAddress address) {
+        this.workers = Objects.requireNonNull(database);
+        this.protocol = new LineProtocol(database.getDelegate());
+        this.address = Objects.requireNonNull(address);
+    }
+
+    /**
+     * Accept and serve clients on the calling thread until close() is called.
+     * @throws IOException If the server socket can't be opened.
+     */
+    public void run() throws IOException {
+
+        selector = Selector.open();
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(address, 1024);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            running = true;
+            System.out.printf("Listening on %s\n", serverChannel.getLocalAddress());
+
+            while (running) {
+                selector.select();
+                Session session;
+                while ((session = sessionsToUpdate.poll()) != null) {
+                    session.updateInterest();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            _accept(serverChannel);
+                        } else {
+                            if (key.isReadable()) {
+                                _read((Session) key.attachment());
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                _write((Session) key.attachment());
+                            }
+                        }
+                    } catch (IOException ex) {
+                        if (key.attachment() != null) {
+                            _close((Session) key.attachment());
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() != null) {
+                    _close((Session) key.attachment());
+                }
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * Returns the number of connected clients.
+     */
+    public int getClientCount() {
+        return clientCount.get();
+    }
+
+    /**
+     * Stop accepting clients and disconnect the connected ones.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    // UTILITY METHODS --------------------------------------------------------
+
+    private void _accept(final ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Session(channel, key));
+            clientCount.incrementAndGet();
+        }
+    }
+
+    private void _read(final Session session) throws IOException {
+
+        ByteBuffer buffer = readBuffer;
+        buffer.clear();
+        int read = session.channel.read(buffer);
+        if (read < 0) {
+            _close(session);
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                String command = session.line.toString(StandardCharsets.UTF_8).strip();
+                session.line.reset();
+                if (!command.isEmpty()) {
+                    session.submit(command);
+                }
+            } else if (session.line.size() >= maxLineLength) {
+                session.fail("ERR line too long\n");
+                break;
+            } else {
+                session.line.write(b);
+            }
+        }
+        session.updateInterest();
+    }
+
+    private void _write(final Session session) throws IOException {
+
+        ByteBuffer buffer;
+        while ((buffer = session.outbound.peek()) != null) {
+            session.channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            session.outbound.poll();
+        }
+        if (session.closeAfterWrite) {
+            _close(session);
+        } else {
+            session.updateInterest();
+        }
+    }
+
+    /**
+     * Reply to a command that could not run.
+     */
+    private static String _errorReply(final Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                ? error.getCause() : error;
+        if (cause instanceof RejectedExecutionException) {
+            return "ERR busy, retry later\n";
+        }
+        return "ERR " + String.valueOf(cause.getMessage()).replace('\n', ' ') + "\n";
+    }
+
+    private void _close(final Session session) {
+        if (!session.channel.isOpen()) {
+            return;
+        }
+        session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (IOException ignored) {
+            // Client is gone anyway.
+        }
+        clientCount.decrementAndGet();
+    }
+}
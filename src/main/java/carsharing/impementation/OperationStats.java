@@ -0,0 +1,72 @@
+package carsharing.impementation;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count, error count, rows and latency histogram of one operation.
+ * Recording is safe from any number of threads and never blocks.
+ */
+class OperationStats {
+
+    private final static int histogramDigits = 2;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final Histogram latencyMicros = new ConcurrentHistogram(histogramDigits);
+
+    /**
+     * @param nanos Duration of the call.
+     * @param rowCount Rows returned or affected, negative if unknown.
+     * @param failed Whether the call threw.
+     */
+    void record(long nanos, int rowCount, boolean failed) {
+        calls.increment();
+        if (failed) {
+            errors.increment();
+        }
+        if (rowCount > 0) {
+            rows.add(rowCount);
+        }
+        latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    void addRows(int rowCount) {
+        rows.add(rowCount);
+    }
+
+    long getCalls() {
+        return calls.sum();
+    }
+
+    long getErrors() {
+        return errors.sum();
+    }
+
+    long getRows() {
+        return rows.sum();
+    }
+
+    double getMeanMicros() {
+        return latencyMicros.getMean();
+    }
+
+    long getPercentileMicros(double percentile) {
+        return latencyMicros.getValueAtPercentile(percentile);
+    }
+
+    long getMaxMicros() {
+        return latencyMicros.getMaxValue();
+    }
+
+    void reset() {
+        calls.reset();
+        errors.reset();
+        rows.reset();
+        latencyMicros.reset();
+    }
+}
@@ -0,0 +1,125 @@
+package carsharing.impementation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Connection borrowed from a ConnectionPool, closing it hands the connection back.
+ */
+public class PooledConnection implements AutoCloseable {
+
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final StatementCache statementCache;
+    private final List<PreparedStatement> uncachedStatements = new ArrayList<>();
+    private volatile long borrowedAt;
+    private volatile long idleSince;
+    private volatile boolean leakReported;
+    private volatile Thread borrower;
+
+    PooledConnection(ConnectionPool pool, Connection connection, StatementCache statementCache) {
+        this.pool = Objects.requireNonNull(pool);
+        this.connection = Objects.requireNonNull(connection);
+        this.statementCache = Objects.requireNonNull(statementCache);
+        this.idleSince = System.nanoTime();
+    }
+
+    /**
+     * Returns the underlying JDBC connection.
+     * @return Connection
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns a prepared statement for sqlQuery from this connection's statement cache.
+     * The statement stays open for reuse; callers close only the result sets they open.
+     * @param sqlQuery SQL text with '?' placeholders.
+     * @return PreparedStatement
+     * @throws SQLException If preparing the statement fails.
+     */
+    public PreparedStatement prepareStatement(final String sqlQuery) throws SQLException {
+        return prepareStatement(sqlQuery, false);
+    }
+
+    /**
+     * Returns a prepared statement for sqlQuery from this connection's statement cache.
+     * @param sqlQuery SQL text with '?' placeholders.
+     * @param returnGeneratedKeys Whether getGeneratedKeys() reports AUTO_INCREMENT ids.
+     * @return PreparedStatement
+     * @throws SQLException If preparing the statement fails.
+     */
+    public PreparedStatement prepareStatement(final String sqlQuery, boolean returnGeneratedKeys)
+            throws SQLException {
+        PreparedStatement preparedStatement = statementCache.prepare(sqlQuery, returnGeneratedKeys);
+        if (!statementCache.isEnabled()) {
+            uncachedStatements.add(preparedStatement);
+        }
+        return preparedStatement;
+    }
+
+    /**
+     * Return this connection to the pool.
+     */
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+
+    // POOL BOOKKEEPING -------------------------------------------------------
+
+    void markBorrowed(long now) {
+        borrowedAt = now;
+        borrower = Thread.currentThread();
+        leakReported = false;
+    }
+
+    void markIdle(long now) {
+        idleSince = now;
+        borrower = null;
+    }
+
+    long getBorrowedAt() {
+        return borrowedAt;
+    }
+
+    long getIdleSince() {
+        return idleSince;
+    }
+
+    Thread getBorrower() {
+        return borrower;
+    }
+
+    boolean isLeakReported() {
+        return leakReported;
+    }
+
+    void setLeakReported() {
+        leakReported = true;
+    }
+
+    void closeUncachedStatements() {
+        for (PreparedStatement preparedStatement : uncachedStatements) {
+            try {
+                preparedStatement.close();
+            } catch (SQLException ignored) {
+                // Statement was single-use anyway.
+            }
+        }
+        uncachedStatements.clear();
+    }
+
+    void closeQuietly() {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Connection is being discarded anyway.
+        }
+    }
+}
@@ -1,9 +0,0 @@
-package carsharing.impementation;
-
-/**
- * SQL query types.
- */
-public enum QueryType {
-    EXECUTE_QUERY,
-    UPDATE_QUERY,
-}
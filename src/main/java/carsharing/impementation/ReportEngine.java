@@ -0,0 +1,170 @@
+package carsharing.impementation;
+
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.CompanyStats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+/**
+ * Computes a FleetReport by scanning CAR, CUSTOMER and RENTAL in parallel.
+ * Each table's id range is split in halves on a ForkJoinPool until a range is at most
+ * reportPartitionSize ids wide; such a range is aggregated by one SQL query on the worker's
+ * pooled connection, and partial aggregates are merged on the way back up.
+ * The pool has at most maxPoolSize workers, so no worker waits for a connection.
+ */
+public class ReportEngine {
+
+    private final Database database;
+    private final int parallelism;
+    private final int partitionSize;
+
+    /**
+     * Aggregates the rows of one table with ids in [fromId, toId].
+     * @param <T> Partial aggregate.
+     */
+    @FunctionalInterface
+    private interface RangeScan<T> {
+        T scan(long fromId, long toId);
+    }
+
+    /**
+     * Splits an id range until it is narrow enough to scan.
+     */
+    private class RangeTask<T> extends RecursiveTask<T> {
+
+        private final static long serialVersionUID = 1L;
+        private final long fromId;
+        private final long toId;
+        private final RangeScan<T> scan;
+        private final BinaryOperator<T> merge;
+        private final AtomicInteger partitions;
+
+        RangeTask(long fromId, long toId, final RangeScan<T> scan, final BinaryOperator<T> merge,
+                  final AtomicInteger partitions) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.scan = scan;
+            this.merge = merge;
+            this.partitions = partitions;
+        }
+
+        @Override
+        protected T compute() {
+            if (toId - fromId < partitionSize) {
+                partitions.incrementAndGet();
+                return scan.scan(fromId, toId);
+            }
+            long middle = fromId + (toId - fromId) / 2;
+            RangeTask<T> left = new RangeTask<>(fromId, middle, scan, merge, partitions);
+            RangeTask<T> right = new RangeTask<>(middle + 1, toId, scan, merge, partitions);
+            left.fork();
+            T rightResult = right.compute();
+            return merge.apply(left.join(), rightResult);
+        }
+    }
+
+    public ReportEngine(final Database database, final DatabaseConfig config) {
+        this.database = Objects.requireNonNull(database);
+        int requested = Objects.requireNonNull(config).getReportParallelism() == 0
+                ? Runtime.getRuntime().availableProcessors() : config.getReportParallelism();
+        this.parallelism = Math.min(requested, config.getMaxPoolSize());
+        this.partitionSize = config.getReportPartitionSize();
+    }
+
+    /**
+     * Run every stage and return the merged figures.
+     * @return FleetReport with the elapsed time of each stage.
+     */
+    public FleetReport run() {
+
+        Map<String, Long> stageNanos = new LinkedHashMap<>();
+        AtomicInteger partitions = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            long start = System.nanoTime();
+            int maxCarId = database.getMaxCarId();
+            int maxCustomerId = database.getMaxCustomerId();
+            long maxRentalId = database.getMaxRentalId();
+            List<Company> companies = database.getAllCompanies();
+            start = _endStage(stageNanos, "bounds", start);
+
+            Map<Integer, CompanyStats> companyStats = pool.invoke(new RangeTask<>(1, maxCarId,
+                    (fromId, toId) -> _byCompany(database.getCarRangeStats((int) fromId, (int) toId)),
+                    ReportEngine::_mergeCompanyStats, partitions));
+            start = _endStage(stageNanos, "cars", start);
+
+            long[] customerCounts = pool.invoke(new RangeTask<>(1, maxCustomerId,
+                    (fromId, toId) -> database.getCustomerRangeCounts((int) fromId, (int) toId),
+                    ReportEngine::_sum, partitions));
+            start = _endStage(stageNanos, "customers", start);
+
+            Map<Integer, long[]> rentalTotals = pool.invoke(new RangeTask<>(1, maxRentalId,
+                    (fromId, toId) -> _byCompanyId(database.getRentalRangeTotals(fromId, toId)),
+                    ReportEngine::_mergeTotals, partitions));
+            start = _endStage(stageNanos, "rentals", start);
+
+            Map<Integer, CompanyStats> allCompanyStats = new TreeMap<>(companyStats);
+            for (Company company : companies) {
+                allCompanyStats.putIfAbsent(company.getId(),
+                        new CompanyStats(company.getId(), company.getName(), 0, 0));
+            }
+            _endStage(stageNanos, "merge", start);
+            return new FleetReport(new ArrayList<>(allCompanyStats.values()), customerCounts[0],
+                    customerCounts[1], rentalTotals, stageNanos, parallelism, partitions.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // UTILITY METHODS --------------------------------------------------------
+
+    private static long _endStage(final Map<String, Long> stageNanos, final String stage, long start) {
+        long now = System.nanoTime();
+        stageNanos.put(stage, now - start);
+        return now;
+    }
+
+    private static Map<Integer, CompanyStats> _byCompany(final List<CompanyStats> companyStats) {
+        Map<Integer, CompanyStats> byCompany = new HashMap<>();
+        companyStats.forEach(stats -> byCompany.put(stats.getCompanyId(), stats));
+        return byCompany;
+    }
+
+    private static Map<Integer, long[]> _byCompanyId(final List<long[]> rows) {
+        Map<Integer, long[]> byCompany = new HashMap<>();
+        rows.forEach(row -> byCompany.put((int) row[0], new long[] {row[1], row[2]}));
+        return byCompany;
+    }
+
+    private static Map<Integer, CompanyStats> _mergeCompanyStats(final Map<Integer, CompanyStats> left,
+                                                               final Map<Integer, CompanyStats> right) {
+        right.forEach((companyId, stats) -> left.merge(companyId, stats, (a, b) -> new CompanyStats(
+                companyId, a.getCompanyName(), a.getTotalCars() + b.getTotalCars(),
+                a.getRentedCars() + b.getRentedCars())));
+        return left;
+    }
+
+    private static Map<Integer, long[]> _mergeTotals(final Map<Integer, long[]> left,
+                                                     final Map<Integer, long[]> right) {
+        right.forEach((companyId, totals) -> left.merge(companyId, totals, ReportEngine::_sum));
+        return left;
+    }
+
+    private static long[] _sum(final long[] left, final long[] right) {
+        long[] sum = new long[left.length];
+        for (int i = 0; i < sum.length; ++i) {
+            sum[i] = left[i] + right[i];
+        }
+        return sum;
+    }
+}
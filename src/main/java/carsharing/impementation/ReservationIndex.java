@@ -0,0 +1,150 @@
+package carsharing.impementation;
+
+import carsharing.valueobjects.Reservation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of bookings, one map per car sorted by start.
+ * Bookings of a car never overlap, so the only one that can collide with [from, to)
+ * is the last one starting before to: a conflict check is one lowerEntry lookup, O(log n)
+ * in the bookings of that car, and a car that was never booked costs one hash lookup.
+ * Bookings that ended are swept out at most once per sweepInterval, moving indexedFrom forward;
+ * periods starting before indexedFrom must be checked against the database.
+ */
+class ReservationIndex {
+
+    private final static Duration sweepInterval = Duration.ofMinutes(1);
+
+    private final Map<Integer, NavigableMap<Instant, Reservation>> carReservations = new ConcurrentHashMap<>();
+    private volatile Instant indexedFrom;
+    private volatile Instant nextSweep;
+
+    /**
+     * @param indexedFrom Bookings ending before this are not indexed.
+     */
+    ReservationIndex(final Instant indexedFrom) {
+        this.indexedFrom = indexedFrom;
+        this.nextSweep = indexedFrom.plus(sweepInterval);
+    }
+
+    /**
+     * Check whether a period includes the current instant.
+     * @param from Start of the period, inclusive.
+     * @param to End of the period, exclusive.
+     * @return true if from is not after now and to is after now.
+     */
+    static boolean coversNow(final Instant from, final Instant to) {
+        Instant now = Instant.now();
+        return !from.isAfter(now) && to.isAfter(now);
+    }
+
+    /**
+     * @return Start of the period the index answers for; earlier bookings may have been dropped.
+     */
+    Instant getIndexedFrom() {
+        return indexedFrom;
+    }
+
+    /**
+     * Index a booking the database accepted, sweeping out ended bookings if a sweep is due.
+     * @param reservation Persisted booking.
+     */
+    void add(final Reservation reservation) {
+        // compute, not computeIfAbsent: a sweep dropping the emptied map of this car
+        // must not race with the put.
+        carReservations.compute(reservation.getCarId(), (carId, reservations) -> {
+            NavigableMap<Instant, Reservation> indexed = reservations == null ? new TreeMap<>() : reservations;
+            synchronized (indexed) {
+                indexed.put(reservation.getStart(), reservation);
+            }
+            return indexed;
+        });
+        Instant now = Instant.now();
+        if (now.isAfter(nextSweep)) {
+            evictEndedBefore(now);
+        }
+    }
+
+    /**
+     * Drop a booking, ignoring ones that are not indexed.
+     * @param reservation Cancelled booking.
+     */
+    void remove(final Reservation reservation) {
+        carReservations.computeIfPresent(reservation.getCarId(), (carId, reservations) -> {
+            synchronized (reservations) {
+                Reservation indexed = reservations.get(reservation.getStart());
+                if (indexed != null && indexed.getId() == reservation.getId()) {
+                    reservations.remove(reservation.getStart());
+                }
+                return reservations.isEmpty() ? null : reservations;
+            }
+        });
+    }
+
+    /**
+     * Drop every booking that ended before a point in time and stop answering for earlier periods.
+     * Bookings of a car are sorted by start and never overlap, so their ends are sorted too
+     * and the ended ones of each car are a prefix of its map.
+     * @param before Usually now.
+     */
+    synchronized void evictEndedBefore(final Instant before) {
+        if (!before.isAfter(indexedFrom)) {
+            return;
+        }
+        indexedFrom = before;
+        nextSweep = before.plus(sweepInterval);
+        for (Integer carId : carReservations.keySet()) {
+            carReservations.computeIfPresent(carId, (id, reservations) -> {
+                synchronized (reservations) {
+                    Iterator<Reservation> iterator = reservations.values().iterator();
+                    while (iterator.hasNext() && !iterator.next().getEnd().isAfter(before)) {
+                        iterator.remove();
+                    }
+                    return reservations.isEmpty() ? null : reservations;
+                }
+            });
+        }
+    }
+
+    /**
+     * Check whether an indexed booking of a car overlaps [from, to).
+     * @param carId Car id.
+     * @param from Start of the period, inclusive.
+     * @param to End of the period, exclusive.
+     * @return true if no indexed booking overlaps the period.
+     */
+    boolean isFree(int carId, final Instant from, final Instant to) {
+        NavigableMap<Instant, Reservation> reservations = carReservations.get(carId);
+        if (reservations == null) {
+            return true;
+        }
+        synchronized (reservations) {
+            Map.Entry<Instant, Reservation> last = reservations.lowerEntry(to);
+            return last == null || !last.getValue().getEnd().isAfter(from);
+        }
+    }
+
+    /**
+     * Returns the indexed booking of a car that includes a point in time.
+     * @param carId Car id.
+     * @param at Point in time, not before indexedFrom.
+     * @return Reservation, or null if the car is not booked at that time.
+     */
+    Reservation getReservationAt(int carId, final Instant at) {
+        NavigableMap<Instant, Reservation> reservations = carReservations.get(carId);
+        if (reservations == null) {
+            return null;
+        }
+        synchronized (reservations) {
+            Map.Entry<Instant, Reservation> last = reservations.floorEntry(at);
+            return last == null || !last.getValue().getEnd().isAfter(at) ? null : last.getValue();
+        }
+    }
+}
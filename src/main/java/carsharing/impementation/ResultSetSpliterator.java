@@ -0,0 +1,39 @@
+package carsharing.impementation;
+
+import carsharing.interfaces.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Sequential Spliterator reading one row of a ResultSet per advance.
+ * @param <T> Value object type.
+ */
+class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+    private final ResultSet resultSet;
+    private final RowMapper<T> rowMapper;
+
+    ResultSetSpliterator(final ResultSet resultSet, final RowMapper<T> rowMapper) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.resultSet = Objects.requireNonNull(resultSet);
+        this.rowMapper = Objects.requireNonNull(rowMapper);
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) {
+        try {
+            if (!resultSet.next()) {
+                return false;
+            }
+            action.accept(rowMapper.mapRow(resultSet));
+            return true;
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package carsharing.impementation;
+
+import carsharing.interfaces.QueryListener;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes statements slower than DatabaseConfig.slowQueryThresholdMillis to a rotating file.
+ * The query thread only offers the statement to a bounded queue, dropping it when the queue
+ * is full; a writer thread captures the plan of SELECTs and appends the entry to the file.
+ * EXPLAIN ANALYZE runs the statement again and tells how many rows it scanned, so it is used
+ * at most once per slowQueryAnalyzeIntervalMillis and plain EXPLAIN otherwise; a burst of slow
+ * statements then doesn't double the load that made them slow. SELECT ... FOR UPDATE always gets
+ * plain EXPLAIN, since running it again would take the row locks its transaction is waiting on.
+ */
+class SlowQueryLog implements QueryListener, AutoCloseable {
+
+    private final static int queueCapacity = 1_000;
+    private final static long pollMillis = 100;
+    private final static Pattern scanCountPattern = Pattern.compile("scanCount: (\\d+)");
+    private final static Pattern forUpdatePattern =
+            Pattern.compile("\\bFOR\\s+UPDATE\\b", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Returns the plan of a statement with its parameters.
+     */
+    @FunctionalInterface
+    interface Explainer {
+        /**
+         * @param analyze true to run the statement and report actual scan counts.
+         */
+        String explain(final String sqlQuery, final Object[] params, boolean analyze);
+    }
+
+    /**
+     * One slow statement waiting to be written.
+     */
+    private static class Entry {
+        final Instant time = Instant.now();
+        final String sqlQuery;
+        final Object[] params;
+        final long acquireNanos;
+        final long executeNanos;
+        final int rows;
+        final Exception error;
+
+        Entry(final String sqlQuery, final Object[] params, long acquireNanos,
+              long executeNanos, int rows, final Exception error) {
+            this.sqlQuery = sqlQuery;
+            this.params = params.clone();
+            this.acquireNanos = acquireNanos;
+            this.executeNanos = executeNanos;
+            this.rows = rows;
+            this.error = error;
+        }
+    }
+
+    private final long thresholdNanos;
+    private final Path file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final long analyzeIntervalNanos;
+    private final Explainer explainer;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(queueCapacity);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+    private BufferedWriter out;
+    private long fileBytes;
+    // Written by the writer thread only.
+    private long lastAnalyzeNanos;
+    private boolean analyzed;
+
+    /**
+     * @param config Threshold and file settings.
+     * @param explainer Returns the plan of a statement, called from the writer thread only.
+     */
+    SlowQueryLog(final DatabaseConfig config, final Explainer explainer) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.getSlowQueryThresholdMillis());
+        this.file = Path.of(config.getSlowQueryLogFile()).toAbsolutePath();
+        this.maxBytes = config.getSlowQueryLogMaxBytes();
+        this.maxFiles = config.getSlowQueryLogFiles();
+        this.analyzeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getSlowQueryAnalyzeIntervalMillis());
+        this.explainer = Objects.requireNonNull(explainer);
+        writer = new Thread(this::_runWriter, "carsharing-slow-query-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void queryExecuted(final String sqlQuery, final Object[] params, long acquireNanos,
+                              long executeNanos, int rows, final Exception error) {
+        if (executeNanos < thresholdNanos || closed) {
+            return;
+        }
+        if (!queue.offer(new Entry(sqlQuery, params, acquireNanos, executeNanos, rows, error))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Write the queued entries and stop the writer thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // UTILITY METHODS --------------------------------------------------------
+
+    /**
+     * Writer thread: write entries until closed and drained.
+     */
+    private void _runWriter() {
+
+        try {
+            for (;;) {
+                Entry entry = queue.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (entry != null) {
+                    _write(_format(entry));
+                } else if (closed) {
+                    break;
+                }
+                long lost = dropped.getAndSet(0);
+                if (lost > 0) {
+                    _write(String.format("%s %d slow statements dropped, log queue full\n\n",
+                            Instant.now(), lost));
+                }
+                if (queue.isEmpty() && out != null) {
+                    out.flush();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            System.err.printf("Warning: slow-query log disabled, writing %s failed: %s\n",
+                    file, ex.getMessage());
+        } finally {
+            closed = true;
+            _closeFile();
+        }
+    }
+
+    private String _format(final Entry entry) {
+
+        StringBuilder text = new StringBuilder();
+        String plan = null;
+        if (entry.error == null && entry.sqlQuery.regionMatches(true, 0, "SELECT", 0, 6)) {
+            long now = System.nanoTime();
+            boolean analyze = !forUpdatePattern.matcher(entry.sqlQuery).find()
+                    && (!analyzed || now - lastAnalyzeNanos >= analyzeIntervalNanos);
+            if (analyze) {
+                analyzed = true;
+                lastAnalyzeNanos = now;
+            }
+            try {
+                plan = explainer.explain(entry.sqlQuery, entry.params, analyze);
+            } catch (RuntimeException ex) {
+                plan = "unavailable: " + ex.getMessage();
+            }
+        }
+        text.append(String.format("%s %.3f ms rows=%d scanned=%s acquire=%.3f ms\n",
+                entry.time, entry.executeNanos / 1e6, entry.rows, _scanned(plan),
+                entry.acquireNanos / 1e6));
+        text.append("  ").append(entry.sqlQuery).append('\n');
+        text.append("  params: ").append(Arrays.deepToString(entry.params)).append('\n');
+        if (entry.error != null) {
+            text.append("  error: ").append(entry.error.getMessage()).append('\n');
+        }
+        if (plan != null) {
+            text.append("  plan:\n");
+            for (String line : plan.split("\n")) {
+                text.append("    ").append(line).append('\n');
+            }
+        }
+        return text.append('\n').toString();
+    }
+
+    /**
+     * Sum of the scanCount comments of a plan, or "?" without one.
+     */
+    private static String _scanned(final String plan) {
+        if (plan == null) {
+            return "?";
+        }
+        Matcher matcher = scanCountPattern.matcher(plan);
+        long scanned = 0;
+        boolean found = false;
+        while (matcher.find()) {
+            scanned += Long.parseLong(matcher.group(1));
+            found = true;
+        }
+        return found ? Long.toString(scanned) : "?";
+    }
+
+    private void _write(final String text) throws IOException {
+        int bytes = text.getBytes(StandardCharsets.UTF_8).length;
+        if (out == null) {
+            _openFile();
+        } else if (fileBytes + bytes > maxBytes) {
+            _rotate();
+        }
+        out.write(text);
+        fileBytes += bytes;
+    }
+
+    private void _openFile() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        fileBytes = Files.exists(file) ? Files.size(file) : 0;
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Shift file.N-1 to file.N down to file to file.1, dropping the oldest, and start a new file.
+     */
+    private void _rotate() throws IOException {
+        out.close();
+        if (maxFiles == 0) {
+            Files.delete(file);
+        } else {
+            Files.deleteIfExists(_rotated(maxFiles));
+            for (int i = maxFiles - 1; i >= 1; --i) {
+                if (Files.exists(_rotated(i))) {
+                    Files.move(_rotated(i), _rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, _rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        _openFile();
+    }
+
+    private Path _rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void _closeFile() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException ex) {
+            System.err.printf("Warning: closing %s failed: %s\n", file, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package carsharing.impementation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-connection LRU cache of prepared statements keyed by SQL text.
+ * A pooled connection is used by one thread at a time, so the cache itself is not synchronized;
+ * the hit/miss counters are shared by all caches of a pool.
+ */
+class StatementCache {
+
+    private final static String generatedKeysPrefix = "/* keys */ ";
+    private final Connection connection;
+    private final int capacity;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final Map<String, PreparedStatement> statements;
+
+    StatementCache(Connection connection, int capacity, AtomicLong hits, AtomicLong misses) {
+        this.connection = Objects.requireNonNull(connection);
+        this.capacity = capacity;
+        this.hits = Objects.requireNonNull(hits);
+        this.misses = Objects.requireNonNull(misses);
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= StatementCache.this.capacity) {
+                    return false;
+                }
+                _closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a cached statement for sqlQuery, preparing it on a miss.
+     * Callers must not close the returned statement.
+     * @param sqlQuery SQL text with '?' placeholders.
+     * @param returnGeneratedKeys Whether the statement reports generated keys.
+     * @return PreparedStatement
+     * @throws SQLException If preparing the statement fails.
+     */
+    PreparedStatement prepare(final String sqlQuery, boolean returnGeneratedKeys) throws SQLException {
+
+        String key = returnGeneratedKeys
+                ? generatedKeysPrefix + Objects.requireNonNull(sqlQuery)
+                : Objects.requireNonNull(sqlQuery);
+        PreparedStatement preparedStatement = statements.get(key);
+        if (preparedStatement != null && !preparedStatement.isClosed()) {
+            hits.incrementAndGet();
+            preparedStatement.clearParameters();
+            return preparedStatement;
+        }
+        misses.incrementAndGet();
+        preparedStatement = connection.prepareStatement(sqlQuery, returnGeneratedKeys
+                ? Statement.RETURN_GENERATED_KEYS
+                : Statement.NO_GENERATED_KEYS);
+        if (capacity > 0) {
+            statements.put(key, preparedStatement);
+        }
+        return preparedStatement;
+    }
+
+    /**
+     * Whether statements returned by prepare() are owned by the cache.
+     */
+    boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    private static void _closeQuietly(PreparedStatement preparedStatement) {
+        try {
+            preparedStatement.close();
+        } catch (SQLException ignored) {
+            // Statement is being evicted anyway.
+        }
+    }
+}
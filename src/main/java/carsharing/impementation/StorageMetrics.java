@@ -0,0 +1,79 @@
+package carsharing.impementation;
+
+/**
+ * Storage profile of a Database and the settings H2 actually applied.
+ */
+public class StorageMetrics {
+
+    private final StorageProfile profile;
+    private final String connectionUrl;
+    private final boolean readOnly;
+    private final long cacheSizeKb;
+    private final long pageSizeBytes;
+    private final long writeDelayMillis;
+    private final long maxMemoryRows;
+    private final long fileSizeBytes;
+
+    public StorageMetrics(final StorageProfile profile, final String connectionUrl, boolean readOnly,
+                          long cacheSizeKb, long pageSizeBytes, long writeDelayMillis,
+                          long maxMemoryRows, long fileSizeBytes) {
+        this.profile = profile;
+        this.connectionUrl = connectionUrl;
+        this.readOnly = readOnly;
+        this.cacheSizeKb = cacheSizeKb;
+        this.pageSizeBytes = pageSizeBytes;
+        this.writeDelayMillis = writeDelayMillis;
+        this.maxMemoryRows = maxMemoryRows;
+        this.fileSizeBytes = fileSizeBytes;
+    }
+
+    public StorageProfile getProfile() {
+        return profile;
+    }
+
+    public String getConnectionUrl() {
+        return connectionUrl;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Page cache size in KB, -1 if H2 doesn't report it.
+     */
+    public long getCacheSizeKb() {
+        return cacheSizeKb;
+    }
+
+    public long getPageSizeBytes() {
+        return pageSizeBytes;
+    }
+
+    public long getWriteDelayMillis() {
+        return writeDelayMillis;
+    }
+
+    /**
+     * Result rows H2 keeps in memory before buffering them to a temporary file.
+     */
+    public long getMaxMemoryRows() {
+        return maxMemoryRows;
+    }
+
+    /**
+     * Size of the database file, -1 for an in-memory database.
+     */
+    public long getFileSizeBytes() {
+        return fileSizeBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "profile=%s readOnly=%b cacheSize=%dKB pageSize=%dB writeDelay=%dms " +
+                "maxMemoryRows=%d fileSize=%dB url=%s",
+                profile, readOnly, cacheSizeKb, pageSizeBytes, writeDelayMillis,
+                maxMemoryRows, fileSizeBytes, connectionUrl);
+    }
+}
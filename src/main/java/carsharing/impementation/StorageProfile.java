@@ -0,0 +1,22 @@
+package carsharing.impementation;
+
+/**
+ * How a Database stores its data.
+ */
+public enum StorageProfile {
+
+    /**
+     * Private in-memory database named after the file name, dropped on close. For tests and benchmarks.
+     */
+    MEMORY,
+
+    /**
+     * File database using the cache size, page size, write delay and result buffering of DatabaseConfig.
+     */
+    FILE,
+
+    /**
+     * Existing file database opened read-only, for replicas; every write fails.
+     */
+    READ_ONLY
+}
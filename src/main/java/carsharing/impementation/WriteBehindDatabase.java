@@ -0,0 +1,647 @@
+package carsharing.impementation;
+
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.Customer;
+import carsharing.valueobjects.Page;
+import carsharing.valueobjects.PageCursor;
+import carsharing.valueobjects.Rental;
+import carsharing.valueobjects.Reservation;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * DatabaseInterface decorator that buffers rentals and returns and writes them in group commits.
+ * Who rents which car is kept in memory and is authoritative as soon as a call returns;
+ * a flusher thread coalesces the changes per customer and writes them with Database.updateRentedCars.
+ * With Durability.WRITE_BEHIND a group is written every flushIntervalMillis, or sooner once
+ * flushMaxOps are buffered; with Durability.GROUP_COMMIT as soon as the previous group is committed.
+ * Finished rentals are timed here and appended to the rental ledger by the same flush,
+ * so getCarRentals, getActiveRentals and getCompanyStats see a change only once its flush
+ * is committed.
+ * A group that fails is bisected to isolate changes the database refuses on their own; those
+ * are dropped and rolled back in memory, the rest is written. When nothing can be written the
+ * whole group is kept and retried after a backoff doubling up to flushMaxBackoffMillis.
+ * Bookings are not buffered; they are checked against the in-memory rentals for periods including now.
+ * With Durability.SYNC every call goes straight to the database.
+ */
+public class WriteBehindDatabase extends ForwardingDatabase implements AutoCloseable {
+
+    // Writes one flush may spend bisecting a failing group before the rest is retried later.
+    private final static int maxFlushAttempts = 32;
+
+    /**
+     * Changes taken from the buffer by one flush, or a part of them.
+     */
+    private static class Group {
+
+        final Map<Integer, Rental> changes;
+        final List<Rental> finishedRentals;
+        final Map<Integer, CompletableFuture<Void>> commits;
+
+        Group(final Map<Integer, Rental> changes, final List<Rental> finishedRentals,
+              final Map<Integer, CompletableFuture<Void>> commits) {
+            this.changes = changes;
+            this.finishedRentals = finishedRentals;
+            this.commits = commits;
+        }
+
+        int size() {
+            return changes.size();
+        }
+
+        /**
+         * Split into two groups of customers, each with its own finished rentals and waiters.
+         */
+        List<Group> split() {
+            List<Integer> customerIds = new ArrayList<>(changes.keySet());
+            Set<Integer> firstIds = new HashSet<>(customerIds.subList(0, customerIds.size() / 2));
+            Group first = new Group(new HashMap<>(), new ArrayList<>(), new HashMap<>());
+            Group second = new Group(new HashMap<>(), new ArrayList<>(), new HashMap<>());
+            for (Integer customerId : customerIds) {
+                Group part = firstIds.contains(customerId) ? first : second;
+                part.changes.put(customerId, changes.get(customerId));
+                CompletableFuture<Void> commit = commits.get(customerId);
+                if (commit != null) {
+                    part.commits.put(customerId, commit);
+                }
+            }
+            for (Rental rental : finishedRentals) {
+                (firstIds.contains(rental.getCustomerId()) ? first : second).finishedRentals.add(rental);
+            }
+            return List.of(first, second);
+        }
+
+        void complete() {
+            commits.values().forEach(commit -> commit.complete(null));
+        }
+
+        void fail(final Throwable error) {
+            commits.values().forEach(commit -> commit.completeExceptionally(error));
+        }
+    }
+
+    private final Database database;
+    private final Durability durability;
+    private final long flushIntervalNanos;
+    private final int flushMaxOps;
+    private final long flushMaxBackoffNanos;
+    private final Map<Integer, Rental> runningRentals = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> carRenters = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    // Customer id to its running rental, or to null once it returned the car.
+    private Map<Integer, Rental> pendingChanges = new HashMap<>();
+    private List<Rental> pendingRentals = new ArrayList<>();
+    // Group commit only: customer id to the future its callers wait on.
+    private Map<Integer, CompletableFuture<Void>> pendingCommits = new HashMap<>();
+    private int pendingOps;
+    private long firstPendingAt;
+    private boolean closed;
+    // Flusher thread only.
+    private int flushAttemptsLeft;
+    private RuntimeException lastFlushError;
+    private final Thread flusher;
+    private final AtomicLong submittedOps = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong maxBatchRows = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong droppedChanges = new AtomicLong();
+
+    public WriteBehindDatabase(final Database database, final DatabaseConfig config) {
+        super(database);
+        this.database = database;
+        this.durability = Objects.requireNonNull(config).getRentalDurability();
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getFlushIntervalMillis());
+        this.flushMaxOps = config.getFlushMaxOps();
+        this.flushMaxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(config.getFlushMaxBackoffMillis());
+        if (durability != Durability.SYNC && database.getStorageProfile() == StorageProfile.READ_ONLY) {
+            throw new IllegalArgumentException(durability + " durability needs a writable database");
+        }
+        if (durability == Durability.SYNC) {
+            flusher = null;
+            return;
+        }
+        for (Rental rental : database.getActiveRentals(Instant.now())) {
+            runningRentals.put(rental.getCustomerId(), rental);
+            carRenters.put(rental.getCarId(), rental.getCustomerId());
+        }
+        flusher = new Thread(this::_runFlusher, "carsharing-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Returns a snapshot of flush statistics.
+     * @return WriteBehindMetrics
+     */
+    public WriteBehindMetrics getMetrics() {
+        int pendingRows;
+        lock.lock();
+        try {
+            pendingRows = pendingChanges.size();
+        } finally {
+            lock.unlock();
+        }
+        return new WriteBehindMetrics(durability, pendingRows, submittedOps.get(),
+                flushCount.get(), flushedRows.get(), maxBatchRows.get(),
+                totalFlushNanos.get(), maxFlushNanos.get(), failedFlushes.get(), droppedChanges.get());
+    }
+
+    /**
+     * Write every buffered change and stop the flusher thread.
+     */
+    @Override
+    public void close() {
+        if (flusher == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public Integer rentCarToCustomer(final Car car, final Customer customer) {
+
+        if (durability == Durability.SYNC) {
+            return delegate.rentCarToCustomer(car, customer);
+        }
+        int carId = Objects.requireNonNull(car).getId();
+        int customerId = Objects.requireNonNull(customer).getId();
+        CompletableFuture<Void> commit;
+        Integer releasedCarId = null;
+        lock.lock();
+        try {
+            Integer renter = carRenters.get(carId);
+            if (renter != null && renter != customerId) {
+                throw new RuntimeException(String.format(
+                        "Car %d is already rented by customer %d", carId, renter));
+            }
+            Rental rental = _startRental(customerId, car);
+            Rental previous = runningRentals.put(customerId, rental);
+            if (previous != null) {
+                releasedCarId = previous.getCarId();
+                carRenters.remove(releasedCarId);
+                _finishRental(previous);
+            }
+            carRenters.put(carId, customerId);
+            commit = _enqueue(customerId, rental);
+        } finally {
+            lock.unlock();
+        }
+        _awaitCommit(commit);
+        return releasedCarId;
+    }
+
+    @Override
+    public boolean tryRent(final Car car, final Customer customer) {
+
+        if (durability == Durability.SYNC) {
+            return delegate.tryRent(car, customer);
+        }
+        int carId = Objects.requireNonNull(car).getId();
+        int customerId = Objects.requireNonNull(customer).getId();
+        CompletableFuture<Void> commit;
+        lock.lock();
+        try {
+            if (carRenters.containsKey(carId) || runningRentals.containsKey(customerId)) {
+                return false;
+            }
+            // Under the lock, so reserveCar can't book the car for now between the check and the rental.
+            Reservation booking = database.getReservationAt(carId, Instant.now());
+            if (booking != null && booking.getCustomerId() != customerId) {
+                return false;
+            }
+            Rental rental = _startRental(customerId, car);
+            runningRentals.put(customerId, rental);
+            carRenters.put(carId, customerId);
+            commit = _enqueue(customerId, rental);
+        } finally {
+            lock.unlock();
+        }
+        _awaitCommit(commit);
+        return true;
+    }
+
+    @Override
+    public Integer returnRentedCar(final Customer customer) {
+
+        if (durability == Durability.SYNC) {
+            return delegate.returnRentedCar(customer);
+        }
+        int customerId = Objects.requireNonNull(customer).getId();
+        CompletableFuture<Void> commit;
+        Rental rental;
+        lock.lock();
+        try {
+            rental = runningRentals.remove(customerId);
+            if (rental != null) {
+                carRenters.remove(rental.getCarId());
+                _finishRental(rental);
+            }
+            commit = _enqueue(customerId, null);
+        } finally {
+            lock.unlock();
+        }
+        _awaitCommit(commit);
+        return rental == null ? null : rental.getCarId();
+    }
+
+    @Override
+    public Customer getCustomerById(final Integer customerId) {
+        return _withRentedCar(delegate.getCustomerById(customerId));
+    }
+
+    @Override
+    public List<Customer> getAllCustomers() {
+        List<Customer> customers = delegate.getAllCustomers();
+        customers.forEach(this::_withRentedCar);
+        return customers;
+    }
+
+    @Override
+    public Stream<Customer> streamAllCustomers() {
+        return delegate.streamAllCustomers().map(this::_withRentedCar);
+    }
+
+    @Override
+    public Page<Customer> getCustomers(final PageCursor cursor, int pageSize) {
+        Page<Customer> page = delegate.getCustomers(cursor, pageSize);
+        page.getItems().forEach(this::_withRentedCar);
+        return page;
+    }
+
+    @Override
+    public List<Customer> findCustomers(final String namePrefix, int limit) {
+        List<Customer> customers = delegate.findCustomers(namePrefix, limit);
+        customers.forEach(this::_withRentedCar);
+        return customers;
+    }
+
+    /**
+     * Answered from the in-memory rentals, the database may not have seen the latest ones yet.
+     */
+    @Override
+    public List<Car> getAvailableCompanyCars(final Company company) {
+        if (durability == Durability.SYNC) {
+            return delegate.getAvailableCompanyCars(company);
+        }
+        return delegate.getCompanyCars(company).stream()
+                .filter(car -> !carRenters.containsKey(car.getId()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Refuses a period including now while another customer rents the car in memory,
+     * then lets the database decide. Both happen under the lock, so tryRent can't rent
+     * the car in between.
+     */
+    @Override
+    public Reservation reserveCar(final Car car, final Customer customer, final Instant start, final Instant end) {
+        if (durability == Durability.SYNC || !ReservationIndex.coversNow(start, end)) {
+            return delegate.reserveCar(car, customer, start, end);
+        }
+        lock.lock();
+        try {
+            Integer renter = carRenters.get(Objects.requireNonNull(car).getId());
+            if (renter != null && renter != Objects.requireNonNull(customer).getId()) {
+                return new Reservation(-1, customer.getId(), car.getId(), start, end);
+            }
+            return delegate.reserveCar(car, customer, start, end);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * For a period including now, rented cars are taken from the in-memory rentals.
+     */
+    @Override
+    public List<Car> getFreeCompanyCars(final Company company, final Instant from, final Instant to) {
+        if (durability == Durability.SYNC || !ReservationIndex.coversNow(from, to)) {
+            return delegate.getFreeCompanyCars(company, from, to);
+        }
+        return database.getUnbookedCompanyCars(company, from, to).stream()
+                .filter(car -> !carRenters.containsKey(car.getId()))
+                .collect(Collectors.toList());
+    }
+
+    // UTILITY METHODS --------------------------------------------------------
+
+    /**
+     * Record the latest state of a customer for the next flush. Caller holds the lock.
+     * @param rental Rental the customer now runs, or null if it rents no car.
+     * @return Future completed when this change is committed, null unless in group commit mode.
+     */
+    private CompletableFuture<Void> _enqueue(int customerId, final Rental rental) {
+
+        if (closed) {
+            throw new IllegalStateException("Database is closed");
+        }
+        if (pendingChanges.isEmpty()) {
+            firstPendingAt = System.nanoTime();
+            flushNeeded.signal();
+        }
+        pendingChanges.put(customerId, rental);
+        submittedOps.incrementAndGet();
+        if (++pendingOps >= flushMaxOps) {
+            flushNeeded.signal();
+        }
+        if (durability != Durability.GROUP_COMMIT) {
+            return null;
+        }
+        return pendingCommits.computeIfAbsent(customerId, id -> new CompletableFuture<>());
+    }
+
+    private static Rental _startRental(int customerId, final Car car) {
+        return new Rental(0, customerId, car.getId(), car.getCompanyId(), Instant.now(), null);
+    }
+
+    /**
+     * Queue a running rental for the ledger, ending now. Caller holds the lock.
+     */
+    private void _finishRental(final Rental rental) {
+        pendingRentals.add(new Rental(0, rental.getCustomerId(), rental.getCarId(), rental.getCompanyId(),
+                rental.getStart(), Instant.now()));
+    }
+
+    private void _awaitCommit(final CompletableFuture<Void> commit) {
+        if (commit == null) {
+            return;
+        }
+        try {
+            commit.join();
+        } catch (CompletionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    private Customer _withRentedCar(final Customer customer) {
+        if (durability != Durability.SYNC && customer.getId() != -1) {
+            Rental rental = runningRentals.get(customer.getId());
+            customer.setRentedCarId(rental == null ? null : rental.getCarId());
+        }
+        return customer;
+    }
+
+    /**
+     * Flusher thread: wait for the first buffered change, let the group fill up, then write it.
+     */
+    private void _runFlusher() {
+
+        long backoffNanos = 0;
+        for (;;) {
+            Group group;
+            lock.lock();
+            try {
+                while (pendingChanges.isEmpty() && !closed) {
+                    flushNeeded.awaitUninterruptibly();
+                }
+                if (pendingChanges.isEmpty()) {
+                    return;
+                }
+                // Group commit callers are blocked, so their group is written as soon as the
+                // previous one is done; changes arriving meanwhile form the next group.
+                long remaining;
+                while (durability == Durability.WRITE_BEHIND && !closed && pendingOps < flushMaxOps
+                        && (remaining = firstPendingAt + flushIntervalNanos - System.nanoTime()) > 0) {
+                    flushNeeded.awaitNanos(remaining);
+                }
+                group = new Group(pendingChanges, pendingRentals, pendingCommits);
+                pendingChanges = new HashMap<>();
+                pendingRentals = new ArrayList<>();
+                pendingCommits = new HashMap<>();
+                pendingOps = 0;
+            } catch (InterruptedException ex) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            if (_flush(group)) {
+                backoffNanos = 0;
+                continue;
+            }
+            if (closed) {
+                _abandonPending();
+                return;
+            }
+            backoffNanos = backoffNanos == 0 ? flushIntervalNanos : Math.min(2 * backoffNanos, flushMaxBackoffNanos);
+            _backOff(backoffNanos);
+        }
+    }
+
+    /**
+     * Write one group, isolating the changes the database refuses.
+     * @return false if nothing could be written and the group was put back.
+     */
+    private boolean _flush(final Group group) {
+
+        long start = System.nanoTime();
+        flushAttemptsLeft = maxFlushAttempts;
+        List<Group> failed = new ArrayList<>();
+        int written = _write(group, failed);
+        if (written == 0) {
+            failedFlushes.incrementAndGet();
+            System.err.printf("Warning: flushing %d rental changes failed, retrying: %s\n",
+                    group.size(), lastFlushError.getMessage());
+            _requeue(group);
+            return false;
+        }
+        // A car handed from one customer to another is only free in the database once the
+        // part returning it is written, so single changes are retried while any of them succeeds.
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (Iterator<Group> parts = failed.iterator(); parts.hasNext(); ) {
+                Group part = parts.next();
+                if (part.size() == 1 && _tryWrite(part)) {
+                    written += 1;
+                    parts.remove();
+                    progress = true;
+                }
+            }
+        }
+        for (Group part : failed) {
+            if (part.size() == 1) {
+                _drop(part);
+            } else {
+                _requeue(part);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        flushCount.incrementAndGet();
+        flushedRows.addAndGet(written);
+        maxBatchRows.accumulateAndGet(written, Math::max);
+        totalFlushNanos.addAndGet(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        return true;
+    }
+
+    /**
+     * Write a group, bisecting it when it fails until flushAttemptsLeft runs out.
+     * @param failed Receives the parts that were not written.
+     * @return Number of customers written.
+     */
+    private int _write(final Group group, final List<Group> failed) {
+
+        if (flushAttemptsLeft == 0) {
+            failed.add(group);
+            return 0;
+        }
+        --flushAttemptsLeft;
+        if (_tryWrite(group)) {
+            return group.size();
+        }
+        if (group.size() == 1) {
+            failed.add(group);
+            return 0;
+        }
+        int written = 0;
+        for (Group part : group.split()) {
+            written += _write(part, failed);
+        }
+        return written;
+    }
+
+    private boolean _tryWrite(final Group group) {
+        try {
+            database.updateRentedCars(group.changes, group.finishedRentals);
+        } catch (RuntimeException ex) {
+            lastFlushError = ex;
+            return false;
+        }
+        group.complete();
+        return true;
+    }
+
+    /**
+     * Give up on a change the database refuses while others are written: restore the customer's
+     * rental from the database unless a newer change is buffered, and fail its waiters.
+     */
+    private void _drop(final Group group) {
+
+        int customerId = group.changes.keySet().iterator().next();
+        droppedChanges.incrementAndGet();
+        System.err.printf("Warning: dropping the rental change of customer %d, the database refuses it: %s\n",
+                customerId, lastFlushError.getMessage());
+        Rental stored;
+        try {
+            stored = database.getRunningRental(customerId);
+        } catch (RuntimeException ex) {
+            stored = null;
+        }
+        lock.lock();
+        try {
+            if (!pendingChanges.containsKey(customerId)) {
+                Rental current = runningRentals.remove(customerId);
+                if (current != null) {
+                    carRenters.remove(current.getCarId(), customerId);
+                }
+                if (stored != null && carRenters.putIfAbsent(stored.getCarId(), customerId) == null) {
+                    runningRentals.put(customerId, stored);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        group.fail(lastFlushError);
+    }
+
+    /**
+     * Put a group back, keeping changes made since it was taken; its waiters wait for the newer ones.
+     */
+    private void _requeue(final Group group) {
+        lock.lock();
+        try {
+            if (pendingChanges.isEmpty()) {
+                firstPendingAt = System.nanoTime();
+            }
+            group.changes.forEach((customerId, rental) -> {
+                if (!pendingChanges.containsKey(customerId)) {
+                    pendingChanges.put(customerId, rental);
+                }
+            });
+            pendingRentals.addAll(0, group.finishedRentals);
+            group.commits.forEach((customerId, commit) -> {
+                CompletableFuture<Void> newer = pendingCommits.putIfAbsent(customerId, commit);
+                if (newer != null) {
+                    newer.whenComplete((ignored, error) -> {
+                        if (error == null) {
+                            commit.complete(null);
+                        } else {
+                            commit.completeExceptionally(error);
+                        }
+                    });
+                }
+            });
+            pendingOps += group.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait before retrying a failed flush; only close cuts the wait short.
+     */
+    private void _backOff(long nanos) {
+        lock.lock();
+        try {
+            long deadline = System.nanoTime() + nanos;
+            long remaining;
+            while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+                flushNeeded.awaitNanos(remaining);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closing while the database fails: report the lost changes and release their waiters.
+     */
+    private void _abandonPending() {
+        lock.lock();
+        try {
+            System.err.printf("Warning: %d rental changes were not written\n", pendingChanges.size());
+            new Group(pendingChanges, pendingRentals, pendingCommits).fail(lastFlushError);
+            pendingChanges = new HashMap<>();
+            pendingRentals = new ArrayList<>();
+            pendingCommits = new HashMap<>();
+            pendingOps = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
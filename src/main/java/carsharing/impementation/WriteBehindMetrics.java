@@ -0,0 +1,103 @@
+package carsharing.impementation;
+
+/**
+ * Point-in-time snapshot of WriteBehindDatabase statistics.
+ */
+public class WriteBehindMetrics {
+
+    private final Durability durability;
+    private final int pendingRows;
+    private final long submittedOps;
+    private final long flushCount;
+    private final long flushedRows;
+    private final long maxBatchRows;
+    private final long totalFlushNanos;
+    private final long maxFlushNanos;
+    private final long failedFlushes;
+    private final long droppedChanges;
+
+    public WriteBehindMetrics(final Durability durability, int pendingRows, long submittedOps,
+                              long flushCount, long flushedRows, long maxBatchRows,
+                              long totalFlushNanos, long maxFlushNanos, long failedFlushes,
+                              long droppedChanges) {
+        this.durability = durability;
+        this.pendingRows = pendingRows;
+        this.submittedOps = submittedOps;
+        this.flushCount = flushCount;
+        this.flushedRows = flushedRows;
+        this.maxBatchRows = maxBatchRows;
+        this.totalFlushNanos = totalFlushNanos;
+        this.maxFlushNanos = maxFlushNanos;
+        this.failedFlushes = failedFlushes;
+        this.droppedChanges = droppedChanges;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Customers with a change waiting for the next flush.
+     */
+    public int getPendingRows() {
+        return pendingRows;
+    }
+
+    /**
+     * Rentals and returns accepted so far.
+     */
+    public long getSubmittedOps() {
+        return submittedOps;
+    }
+
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * Rows written by all flushes; lower than submittedOps when changes of one customer coalesce.
+     */
+    public long getFlushedRows() {
+        return flushedRows;
+    }
+
+    public long getMaxBatchRows() {
+        return maxBatchRows;
+    }
+
+    public double getAverageBatchRows() {
+        return flushCount == 0 ? 0.0 : (double) flushedRows / flushCount;
+    }
+
+    public long getMaxFlushNanos() {
+        return maxFlushNanos;
+    }
+
+    public double getAverageFlushNanos() {
+        return flushCount == 0 ? 0.0 : (double) totalFlushNanos / flushCount;
+    }
+
+    /**
+     * Flushes that wrote nothing and were retried.
+     */
+    public long getFailedFlushes() {
+        return failedFlushes;
+    }
+
+    /**
+     * Changes the database refused on their own, given up and rolled back in memory.
+     */
+    public long getDroppedChanges() {
+        return droppedChanges;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "durability=%s pending=%d submitted=%d flushes=%d flushedRows=%d " +
+                "avgBatch=%.1f maxBatch=%d avgFlush=%.1fus maxFlush=%.1fus failedFlushes=%d droppedChanges=%d",
+                durability, pendingRows, submittedOps, flushCount, flushedRows,
+                getAverageBatchRows(), maxBatchRows,
+                getAverageFlushNanos() / 1_000.0, maxFlushNanos / 1_000.0, failedFlushes, droppedChanges);
+    }
+}
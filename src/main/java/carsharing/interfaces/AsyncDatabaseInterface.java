@@ -0,0 +1,56 @@
+package carsharing.interfaces;
+
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.CompanyStats;
+import carsharing.valueobjects.Customer;
+import carsharing.valueobjects.Page;
+import carsharing.valueobjects.PageCursor;
+import carsharing.valueobjects.Rental;
+import carsharing.valueobjects.Reservation;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interface representing asynchronous Database methods.
+ * Mirrors DatabaseInterface, except for the streaming readers which are consumed on the caller's thread.
+ */
+public interface AsyncDatabaseInterface {
+    CompletableFuture<Company> addCompany(final Company company);
+    CompletableFuture<Car> addCar(final Car car);
+    CompletableFuture<Customer> addCustomer(final Customer customer);
+    CompletableFuture<List<Integer>> addCompanies(final Iterable<Company> companies);
+    CompletableFuture<List<Integer>> addCars(final Iterable<Car> cars);
+    CompletableFuture<List<Integer>> addCustomers(final Iterable<Customer> customers);
+    CompletableFuture<Integer> rentCarToCustomer(final Car car, final Customer customer);
+    CompletableFuture<Boolean> tryRent(final Car car, final Customer customer);
+    CompletableFuture<Integer> returnRentedCar(final Customer customer);
+    CompletableFuture<Car> getCarById(final Integer id);
+    CompletableFuture<Company> getCompanyById(final Integer companyId);
+    CompletableFuture<Customer> getCustomerById(final Integer customerId);
+    CompletableFuture<List<Car>> getCarsByIds(final Collection<Integer> ids);
+    CompletableFuture<List<Company>> getCompaniesByIds(final Collection<Integer> companyIds);
+    CompletableFuture<List<Company>> getAllCompanies();
+    CompletableFuture<List<Car>> getAllCars();
+    CompletableFuture<List<Car>> getCompanyCars(final Company company);
+    CompletableFuture<List<Car>> getAvailableCompanyCars(final Company company);
+    CompletableFuture<List<Customer>> getAllCustomers();
+    CompletableFuture<Page<Company>> getCompanies(final PageCursor cursor, int pageSize);
+    CompletableFuture<Page<Car>> getCars(final PageCursor cursor, int pageSize);
+    CompletableFuture<Page<Car>> getCompanyCars(final Company company, final PageCursor cursor, int pageSize);
+    CompletableFuture<Page<Customer>> getCustomers(final PageCursor cursor, int pageSize);
+    CompletableFuture<List<Customer>> findCustomers(final String namePrefix, int limit);
+    CompletableFuture<List<Rental>> getCarRentals(final Car car, final Instant from, final Instant to);
+    CompletableFuture<List<Rental>> getActiveRentals(final Instant at);
+    CompletableFuture<CompanyStats> getCompanyStats(final Company company);
+    CompletableFuture<List<CompanyStats>> getAllCompanyStats();
+    CompletableFuture<Reservation> reserveCar(final Car car, final Customer customer,
+                                              final Instant start, final Instant end);
+    CompletableFuture<Boolean> cancelReservation(final Reservation reservation);
+    CompletableFuture<List<Reservation>> getCustomerReservations(final Customer customer);
+    CompletableFuture<List<Reservation>> getUpcomingReservations(final Instant after);
+    CompletableFuture<List<Car>> getFreeCompanyCars(final Company company, final Instant from, final Instant to);
+}
@@ -2,24 +2,56 @@ package carsharing.interfaces;
 
 import carsharing.valueobjects.Car;
 import carsharing.valueobjects.Company;
+import carsharing.valueobjects.CompanyStats;
 import carsharing.valueobjects.Customer;
+import carsharing.valueobjects.Page;
+import carsharing.valueobjects.PageCursor;
+import carsharing.valueobjects.Rental;
+import carsharing.valueobjects.Reservation;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Interface representing Database methods.
  */
 public interface DatabaseInterface {
-    void addCompany(final Company company);
-    void addCar(final Car car);
-    void addCustomer(final Customer customer);
-    void rentCarToCustomer(final Car car, final Customer customer);
-    void returnRentedCar(final Customer customer);
+    Company addCompany(final Company company);
+    Car addCar(final Car car);
+    Customer addCustomer(final Customer customer);
+    List<Integer> addCompanies(final Iterable<Company> companies);
+    List<Integer> addCars(final Iterable<Car> cars);
+    List<Integer> addCustomers(final Iterable<Customer> customers);
+    Integer rentCarToCustomer(final Car car, final Customer customer);
+    boolean tryRent(final Car car, final Customer customer);
+    Integer returnRentedCar(final Customer customer);
     Car getCarById(final Integer id);
     Company getCompanyById(final Integer companyId);
+    Customer getCustomerById(final Integer customerId);
+    List<Car> getCarsByIds(final Collection<Integer> ids);
+    List<Company> getCompaniesByIds(final Collection<Integer> companyIds);
     List<Company> getAllCompanies();
     List<Car> getAllCars();
     List<Car> getCompanyCars(final Company company);
     List<Car> getAvailableCompanyCars(final Company company);
     List<Customer> getAllCustomers();
+    Stream<Company> streamAllCompanies();
+    Stream<Car> streamAllCars();
+    Stream<Customer> streamAllCustomers();
+    Page<Company> getCompanies(final PageCursor cursor, int pageSize);
+    Page<Car> getCars(final PageCursor cursor, int pageSize);
+    Page<Car> getCompanyCars(final Company company, final PageCursor cursor, int pageSize);
+    Page<Customer> getCustomers(final PageCursor cursor, int pageSize);
+    List<Customer> findCustomers(final String namePrefix, int limit);
+    List<Rental> getCarRentals(final Car car, final Instant from, final Instant to);
+    List<Rental> getActiveRentals(final Instant at);
+    CompanyStats getCompanyStats(final Company company);
+    List<CompanyStats> getAllCompanyStats();
+    Reservation reserveCar(final Car car, final Customer customer, final Instant start, final Instant end);
+    boolean cancelReservation(final Reservation reservation);
+    List<Reservation> getCustomerReservations(final Customer customer);
+    List<Reservation> getUpcomingReservations(final Instant after);
+    List<Car> getFreeCompanyCars(final Company company, final Instant from, final Instant to);
 }
@@ -0,0 +1,21 @@
+package carsharing.interfaces;
+
+/**
+ * Receives one callback per SQL statement a Database runs.
+ * Called on the query thread after the statement finished, so implementations must be fast
+ * and thread-safe.
+ */
+@FunctionalInterface
+public interface QueryListener {
+
+    /**
+     * @param sqlQuery Statement text with '?' placeholders.
+     * @param params Bound values, don't modify.
+     * @param acquireNanos Time spent waiting for a pooled connection.
+     * @param executeNanos Time spent running the statement and reading its rows.
+     * @param rows Rows returned or affected, -1 if unknown.
+     * @param error Failure of the statement, or null if it succeeded.
+     */
+    void queryExecuted(final String sqlQuery, final Object[] params, long acquireNanos,
+                       long executeNanos, int rows, final Exception error);
+}
@@ -0,0 +1,14 @@
+package carsharing.interfaces;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a ResultSet to a value object.
+ * Implementations read columns by index, in the order the query selects them.
+ * @param <T> Value object type.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+    T mapRow(final ResultSet resultSet) throws SQLException;
+}
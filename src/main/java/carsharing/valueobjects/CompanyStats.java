@@ -0,0 +1,48 @@
+package carsharing.valueobjects;
+
+import java.util.Objects;
+
+/**
+ * Value object representing the fleet utilisation of a company.
+ */
+public class CompanyStats {
+
+    private final int companyId;
+    private final String companyName;
+    private final int totalCars;
+    private final int rentedCars;
+
+    public CompanyStats(int companyId, String companyName, int totalCars, int rentedCars) {
+        this.companyId = companyId;
+        this.companyName = Objects.requireNonNull(companyName);
+        this.totalCars = totalCars;
+        this.rentedCars = rentedCars;
+    }
+
+    public int getCompanyId() {
+        return companyId;
+    }
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public int getTotalCars() {
+        return totalCars;
+    }
+
+    public int getRentedCars() {
+        return rentedCars;
+    }
+
+    public int getAvailableCars() {
+        return totalCars - rentedCars;
+    }
+
+    /**
+     * Share of the fleet currently rented, between 0 and 1; 0 for a company without cars.
+     */
+    public double getUtilisation() {
+        return totalCars == 0 ? 0.0 : (double) rentedCars / totalCars;
+    }
+}
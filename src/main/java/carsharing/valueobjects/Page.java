@@ -0,0 +1,56 @@
+package carsharing.valueobjects;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Value object representing one page of rows ordered by id,
+ * with cursors to the neighbouring pages.
+ * @param <T> Row value object type.
+ */
+public class Page<T> {
+
+    private final List<T> items;
+    private final int firstId;
+    private final int lastId;
+    private final boolean hasNext;
+    private final boolean hasPrevious;
+
+    public Page(List<T> items, int firstId, int lastId, boolean hasNext, boolean hasPrevious) {
+        this.items = List.copyOf(Objects.requireNonNull(items));
+        this.firstId = firstId;
+        this.lastId = lastId;
+        this.hasNext = hasNext;
+        this.hasPrevious = hasPrevious;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    public boolean hasPrevious() {
+        return hasPrevious;
+    }
+
+    /**
+     * Cursor of the page following this one.
+     */
+    public PageCursor nextCursor() {
+        return PageCursor.after(lastId);
+    }
+
+    /**
+     * Cursor of the page preceding this one.
+     */
+    public PageCursor previousCursor() {
+        return PageCursor.before(firstId);
+    }
+}
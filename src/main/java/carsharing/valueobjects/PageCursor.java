@@ -0,0 +1,51 @@
+package carsharing.valueobjects;
+
+/**
+ * Value object representing a keyset pagination position:
+ * the page starts right after or ends right before a known id.
+ */
+public class PageCursor {
+
+    private final static PageCursor firstPage = new PageCursor(Integer.MIN_VALUE, true);
+
+    private final int id;
+    private final boolean forward;
+
+    private PageCursor(int id, boolean forward) {
+        this.id = id;
+        this.forward = forward;
+    }
+
+    /**
+     * Cursor of the first page.
+     */
+    public static PageCursor first() {
+        return firstPage;
+    }
+
+    /**
+     * Cursor of the page of rows with ids greater than id.
+     */
+    public static PageCursor after(int id) {
+        return new PageCursor(id, true);
+    }
+
+    /**
+     * Cursor of the page of rows with ids less than id.
+     */
+    public static PageCursor before(int id) {
+        return new PageCursor(id, false);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean isForward() {
+        return forward;
+    }
+
+    public boolean isFirst() {
+        return this == firstPage;
+    }
+}
@@ -0,0 +1,58 @@
+package carsharing.valueobjects;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Value object representing one rental of a car, finished or still running.
+ */
+public class Rental {
+
+    private final long id;
+    private final int customerId;
+    private final int carId;
+    private final int companyId;
+    private final Instant start;
+    private final Instant end;
+
+    /**
+     * @param id Ledger id, 0 for a rental that is still running.
+     * @param end End of the rental, null while it is running.
+     */
+    public Rental(long id, int customerId, int carId, int companyId, Instant start, Instant end) {
+        this.id = id;
+        this.customerId = customerId;
+        this.carId = carId;
+        this.companyId = companyId;
+        this.start = Objects.requireNonNull(start);
+        this.end = end;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public int getCarId() {
+        return carId;
+    }
+
+    public int getCompanyId() {
+        return companyId;
+    }
+
+    public Instant getStart() {
+        return start;
+    }
+
+    public Instant getEnd() {
+        return end;
+    }
+
+    public boolean isActive() {
+        return end == null;
+    }
+}
@@ -0,0 +1,56 @@
+package carsharing.valueobjects;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Value object representing a booking of a car over [start, end).
+ */
+public class Reservation {
+
+    private final long id;
+    private final int customerId;
+    private final int carId;
+    private final Instant start;
+    private final Instant end;
+
+    /**
+     * @param id Reservation id, -1 for a booking that was refused.
+     * @param start Start of the booking, inclusive.
+     * @param end End of the booking, exclusive.
+     */
+    public Reservation(long id, int customerId, int carId, Instant start, Instant end) {
+        this.id = id;
+        this.customerId = customerId;
+        this.carId = carId;
+        this.start = Objects.requireNonNull(start);
+        this.end = Objects.requireNonNull(end);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public int getCarId() {
+        return carId;
+    }
+
+    public Instant getStart() {
+        return start;
+    }
+
+    public Instant getEnd() {
+        return end;
+    }
+
+    /**
+     * @return true if the booking shares any instant with [from, to).
+     */
+    public boolean overlaps(final Instant from, final Instant to) {
+        return start.isBefore(to) && end.isAfter(from);
+    }
+}
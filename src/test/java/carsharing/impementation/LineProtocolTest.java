@@ -0,0 +1,127 @@
+package carsharing.impementation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the rental history, statistics, search and booking commands of the line protocol against
+ * an in-memory Database and checks the replies.
+ */
+class LineProtocolTest {
+
+    private Database database;
+    private LineProtocol protocol;
+    private int companyId;
+    private int carId;
+    private int firstCustomerId;
+    private int secondCustomerId;
+
+    @BeforeEach
+    void setUp() {
+
+        DatabaseConfig config = new DatabaseConfig().setStorageProfile(StorageProfile.MEMORY);
+        database = new Database("lineProtocol" + System.nanoTime(), config);
+        protocol = new LineProtocol(database);
+        companyId = _id(protocol.handle("ADD_COMPANY Car To Go"));
+        carId = _id(protocol.handle("ADD_CAR " + companyId + " Hyundai Venue"));
+        firstCustomerId = _id(protocol.handle("ADD_CUSTOMER First customer"));
+        secondCustomerId = _id(protocol.handle("ADD_CUSTOMER Second customer"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    void findsCustomersByNamePrefix() {
+
+        assertEquals("OK 1\n" + firstCustomerId + "\t-\tFirst customer\n", protocol.handle("FIND Fir"));
+        assertEquals("OK 0\n", protocol.handle("FIND Third"));
+    }
+
+    @Test
+    void reportsRentalsAndCompanyStats() {
+
+        Instant before = Instant.now().minus(1, ChronoUnit.HOURS);
+        assertEquals("OK\n", protocol.handle("RENT " + firstCustomerId + " " + carId));
+        assertEquals("OK 1\n" + companyId + "\t1\t1\tCar To Go\n", protocol.handle("COMPANY_STATS " + companyId));
+        assertEquals("OK 1\n" + companyId + "\t1\t1\tCar To Go\n", protocol.handle("COMPANY_STATS"));
+
+        String[] active = _rows(protocol.handle("ACTIVE_RENTALS"), 1);
+        assertEquals(firstCustomerId + "\t" + carId + "\t" + companyId, _columns(active[0], 1, 4));
+        assertTrue(active[0].endsWith("\t-"), active[0]);
+
+        assertEquals("OK\n", protocol.handle("RETURN " + firstCustomerId));
+        Instant after = Instant.now().plus(1, ChronoUnit.HOURS);
+        String[] rentals = _rows(protocol.handle("CAR_RENTALS " + carId + " " + before + " " + after), 1);
+        assertEquals(firstCustomerId + "\t" + carId + "\t" + companyId, _columns(rentals[0], 1, 4));
+        assertFalse(rentals[0].endsWith("\t-"), rentals[0]);
+        assertEquals("OK 0\n", protocol.handle("ACTIVE_RENTALS " + after));
+    }
+
+    @Test
+    void booksAndCancelsReservations() {
+
+        Instant start = Instant.now().plus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.SECONDS);
+        Instant end = start.plus(2, ChronoUnit.HOURS);
+        String window = start + " " + end;
+        int reservationId = _id(protocol.handle("RESERVE " + firstCustomerId + " " + carId + " " + window));
+
+        assertEquals("ERR car is not free in that window\n",
+                protocol.handle("RESERVE " + secondCustomerId + " " + carId + " " + window));
+        String booking = reservationId + "\t" + firstCustomerId + "\t" + carId + "\t" + start + "\t" + end + "\n";
+        assertEquals("OK 1\n" + booking, protocol.handle("RESERVATIONS " + firstCustomerId));
+        assertEquals("OK 1\n" + booking, protocol.handle("UPCOMING"));
+        assertEquals("OK 0\n", protocol.handle("FREE " + companyId + " " + window));
+        assertEquals("OK 1\n" + carId + "\t" + companyId + "\tHyundai Venue\n",
+                protocol.handle("FREE " + companyId + " " + end + " " + end.plus(1, ChronoUnit.HOURS)));
+
+        assertEquals("ERR unknown reservation " + reservationId + "\n",
+                protocol.handle("CANCEL " + secondCustomerId + " " + reservationId));
+        assertEquals("OK\n", protocol.handle("CANCEL " + firstCustomerId + " " + reservationId));
+        assertEquals("OK 0\n", protocol.handle("RESERVATIONS " + firstCustomerId));
+        assertEquals("OK 1\n" + carId + "\t" + companyId + "\tHyundai Venue\n",
+                protocol.handle("FREE " + companyId + " " + window));
+    }
+
+    @Test
+    void rejectsMalformedArguments() {
+
+        assertEquals("ERR not an ISO-8601 instant: 'tomorrow'\n", protocol.handle("ACTIVE_RENTALS tomorrow"));
+        assertEquals("ERR usage: CAR_RENTALS <carId> <from> <to>\n", protocol.handle("CAR_RENTALS " + carId));
+        assertEquals("ERR unknown car 999\n",
+                protocol.handle("RESERVE " + firstCustomerId + " 999 2030-01-01T10:00:00Z 2030-01-01T11:00:00Z"));
+        assertEquals("ERR Empty time window: 2030-01-01T11:00:00Z to 2030-01-01T10:00:00Z\n",
+                protocol.handle("FREE " + companyId + " 2030-01-01T11:00:00Z 2030-01-01T10:00:00Z"));
+    }
+
+    // UTILITY METHODS --------------------------------------------------------
+
+    private static int _id(final String reply) {
+        assertTrue(reply.startsWith("OK "), reply);
+        return Integer.parseInt(reply.substring(3).trim());
+    }
+
+    private static String[] _rows(final String reply, final int expectedRows) {
+        String[] lines = reply.split("\n");
+        assertEquals("OK " + expectedRows, lines[0], reply);
+        String[] rows = new String[lines.length - 1];
+        System.arraycopy(lines, 1, rows, 0, rows.length);
+        assertEquals(expectedRows, rows.length, reply);
+        return rows;
+    }
+
+    private static String _columns(final String row, final int from, final int to) {
+        return String.join("\t", Arrays.asList(row.split("\t")).subList(from, to));
+    }
+}
@@ -0,0 +1,201 @@
+package carsharing.impementation;
+
+import carsharing.interfaces.DatabaseInterface;
+import carsharing.valueobjects.Car;
+import carsharing.valueobjects.Company;
+import carsharing.valueobjects.Customer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hammers tryRent and returnRentedCar from many threads over few cars and checks that no car
+ * ever has two renters and that no car is lost: afterwards exactly the cars the threads still
+ * hold are rented in the database.
+ * The direct case calls Database, so concurrent renters of a car meet in its conditional update
+ * and unique index; the others go through the availability index, which must agree with the
+ * database afterwards.
+ * Every thread owns its customers, so it knows what they rent; the cars are shared, two customers
+ * per car.
+ */
+class TryRentStressTest {
+
+    private final static int threads = 8;
+    private final static int customersPerThread = 5;
+    private final static int cars = 20;
+    private final static int opsPerThread = 2_000;
+    private final static double minOpsPerSecond = 1_000;
+
+    @Test
+    void noDoubleBookingWithDirectDatabaseRentals() throws Exception {
+
+        DatabaseConfig config = new DatabaseConfig().setStorageProfile(StorageProfile.MEMORY);
+        Database database = new Database("tryRentStressDirect", config);
+        try {
+            Company company = _seed(database);
+            Map<Integer, Integer> rentedCars = new ConcurrentHashMap<>();
+            AtomicLong rentals = new AtomicLong();
+            long start = System.nanoTime();
+            _runWorkers(database, database, rentedCars, rentals);
+            double opsPerSecond = threads * opsPerThread / ((System.nanoTime() - start) / 1e9);
+
+            assertTrue(rentals.get() > 0, "no rental succeeded");
+            _assertStored(database, company, rentedCars);
+            assertTrue(opsPerSecond >= minOpsPerSecond,
+                    String.format("%.0f rent/return ops/s, expected at least %.0f", opsPerSecond, minOpsPerSecond));
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    void noDoubleBookingWithSyncRentals() throws Exception {
+        _run("tryRentStressSync", Durability.SYNC);
+    }
+
+    @Test
+    void noDoubleBookingWithWriteBehindRentals() throws Exception {
+        _run("tryRentStressWriteBehind", Durability.WRITE_BEHIND);
+    }
+
+    // UTILITY METHODS --------------------------------------------------------
+
+    private static void _run(final String databaseName, final Durability durability) throws Exception {
+
+        DatabaseConfig config = new DatabaseConfig()
+                .setStorageProfile(StorageProfile.MEMORY)
+                .setRentalDurability(durability);
+        Database database = new Database(databaseName, config);
+        try {
+            Company company = _seed(database);
+            WriteBehindDatabase writeBehindDatabase = new WriteBehindDatabase(database, config);
+            CachingDatabase cachingDatabase = new CachingDatabase(writeBehindDatabase, config);
+            cachingDatabase.getAvailableCompanyCars(company);
+
+            Map<Integer, Integer> rentedCars = new ConcurrentHashMap<>();
+            _runWorkers(database, cachingDatabase, rentedCars, new AtomicLong());
+            writeBehindDatabase.close();
+
+            assertEquals(_ids(database.getAvailableCompanyCars(company)),
+                    _ids(cachingDatabase.getAvailableCompanyCars(company)));
+            assertEquals(database.getCompanyStats(company).getRentedCars(),
+                    cachingDatabase.getCompanyStats(company).getRentedCars());
+            _assertStored(database, company, rentedCars);
+        } finally {
+            database.close();
+        }
+    }
+
+    private static Company _seed(final Database database) {
+        Company company = database.addCompany(new Company(0, "stress"));
+        for (int i = 0; i < cars; ++i) {
+            database.addCar(new Car(0, company.getId(), "car" + i));
+        }
+        for (int i = 0; i < threads * customersPerThread; ++i) {
+            database.addCustomer(new Customer(0, null, "customer" + i));
+        }
+        return company;
+    }
+
+    /**
+     * Runs _work on every thread with its own customers and waits for all of them.
+     * @param database Seeded database, read for the fleet and customers.
+     * @param service Layer the rentals go through.
+     * @param rentedCars Filled with customer id to rented car id.
+     * @param rentals Counts successful rentals.
+     */
+    private static void _runWorkers(final Database database, final DatabaseInterface service,
+                                    final Map<Integer, Integer> rentedCars, final AtomicLong rentals)
+            throws Exception {
+
+        List<Car> fleet = database.getAllCars();
+        List<Customer> customers = database.getAllCustomers();
+        Map<Integer, Integer> renters = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; ++t) {
+                List<Customer> own = customers.subList(t * customersPerThread, (t + 1) * customersPerThread);
+                workers.add(executor.submit(() -> {
+                    _work(service, fleet, own, renters, rentedCars, rentals);
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Check that the database rents exactly the cars the threads hold, to the customers holding them.
+     */
+    private static void _assertStored(final Database database, final Company company,
+                                      final Map<Integer, Integer> rentedCars) {
+
+        Map<Integer, Integer> storedRentals = new HashMap<>();
+        for (Customer customer : database.getAllCustomers()) {
+            if (customer.getRentedCarId() != null) {
+                storedRentals.put(customer.getId(), customer.getRentedCarId());
+            }
+        }
+        assertEquals(rentedCars, storedRentals);
+        Set<Integer> free = new HashSet<>(_ids(database.getCompanyCars(company)));
+        free.removeAll(rentedCars.values());
+        assertEquals(free, _ids(database.getAvailableCompanyCars(company)));
+    }
+
+    /**
+     * Rents or returns at random for the customers of one thread.
+     * @param renters Car id to renting customer id, shared by all threads.
+     * @param rentedCars Customer id to rented car id, shared by all threads.
+     * @param rentals Counts successful rentals.
+     */
+    private static void _work(final DatabaseInterface database, final List<Car> fleet, final List<Customer> own,
+                              final Map<Integer, Integer> renters, final Map<Integer, Integer> rentedCars,
+                              final AtomicLong rentals) {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < opsPerThread; ++i) {
+            Customer customer = own.get(random.nextInt(own.size()));
+            Integer rentedCarId = rentedCars.get(customer.getId());
+            if (rentedCarId == null) {
+                Car car = fleet.get(random.nextInt(fleet.size()));
+                if (database.tryRent(car, customer)) {
+                    assertNull(renters.putIfAbsent(car.getId(), customer.getId()),
+                            "car " + car.getId() + " rented twice");
+                    rentedCars.put(customer.getId(), car.getId());
+                    rentals.incrementAndGet();
+                }
+            } else {
+                // Forget the renter before the database frees the car for others.
+                assertTrue(renters.remove(rentedCarId, customer.getId()));
+                rentedCars.remove(customer.getId());
+                assertEquals(rentedCarId, database.returnRentedCar(customer));
+            }
+        }
+    }
+
+    private static Set<Integer> _ids(final List<Car> cars) {
+        return cars.stream().map(Car::getId).collect(Collectors.toSet());
+    }
+}